@@ -0,0 +1,871 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Micro-benchmarks for BST and ArrayBST, the tree and trie word indexes, the Token
+ * comparators and the stages of the A3 pipeline.
+ * <p>
+ * Each benchmark is parameterized by a size and, where it applies, a key order (random,
+ * sorted, reverse or Zipfian). It is warmed up, then timed operation by operation, and
+ * reported as ns/op, ns per element and bytes allocated per operation (from the thread's
+ * allocation counter), along with the allocation rate. The pipeline stages run on generated
+ * Zipfian corpora of each size and on res/input3.txt. Rows named *.retained instead give,
+ * under B/op, the heap a structure keeps after a full collection, and rows named
+ * *.comparisons give, under ns/elem, the mean number of comparisons per word counted.
+ * <p>
+ * Usage: java Benchmarks [--sizes 1000,10000] [--orders random,zipfian] [--filter bst.]
+ * [--time ms]
+ */
+public class Benchmarks {
+    /**
+     * The order keys are inserted in, or looked up in.
+     */
+    enum KeyOrder { RANDOM, SORTED, REVERSE, ZIPFIAN }
+
+    /**
+     * One benchmark: the state for an operation is made outside the timed region.
+     */
+    interface Benchmark {
+        Object setUp();
+        Object run(Object state);
+    }
+
+    private static final long SEED = 2503;
+    // Degenerate PLAIN trees take quadratic time to build; larger ones are skipped.
+    private static final int MAX_DEGENERATE_SIZE = 20_000;
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int[] sizes = {1_000, 10_000, 100_000};
+    private static List<KeyOrder> orders = Arrays.asList(KeyOrder.values());
+    private static String filter = "";
+    private static long timeMillis = 1_000;
+
+    // Keeps results reachable so the JIT cannot discard the work.
+    private static Object sink;
+
+    public static void main(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--orders":
+                    orders = new ArrayList<>();
+                    for (String order : args[++i].split(",")) {
+                        orders.add(KeyOrder.valueOf(order.toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--time":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: java Benchmarks [--sizes n,...] [--orders random,sorted,reverse,zipfian]"
+                            + " [--filter text] [--time ms]");
+                    System.exit(1);
+            }
+        }
+
+        System.out.printf("%-28s %-6s %-11s %9s %14s %12s %14s %10s%n",
+                "benchmark", "mode", "order", "size", "ns/op", "ns/elem", "B/op", "MB/s alloc");
+        for (int size : sizes) {
+            List<Token> keys = distinctWords(size, new Random(SEED));
+            for (KeyOrder order : orders) {
+                for (BST.Mode mode : BST.Mode.values()) {
+                    benchmarkTree(keys, order, mode);
+                    if (mode != BST.Mode.SPLAY) {
+                        benchmarkArrayTree(keys, order, mode);
+                    }
+                }
+            }
+            benchmarkBulkBuild(keys);
+            benchmarkConcurrentIndex(keys);
+            benchmarkWordIndexes("zipfian", zipfianStream(keys, keys.size() * 4));
+            benchmarkComparisons("zipfian", zipfianStream(keys, keys.size() * 4));
+            benchmarkReposition(keys);
+            benchmarkComparators(keys);
+            benchmarkPipeline("zipf-" + size, zipfianCorpus(size, new Random(SEED)), size);
+        }
+
+        Path realText = Paths.get("res", "input3.txt");
+        if (Files.exists(realText)) {
+            byte[] text = Files.readAllBytes(realText);
+            benchmarkPipeline("input3", text, countWords(text));
+            benchmarkWordIndexes("input3", words(text));
+            benchmarkComparisons("input3", words(text));
+        }
+    }
+
+    /**
+     * Method to benchmark the tree operations for one combination of parameters
+     * @param keys the distinct keys
+     * @param order the order keys are inserted and looked up in
+     * @param mode the shape-maintenance mode of the tree
+     */
+    private static void benchmarkTree(List<Token> keys, KeyOrder order, BST.Mode mode) {
+        int size = keys.size();
+        if (mode == BST.Mode.PLAIN && size > MAX_DEGENERATE_SIZE
+                && (order == KeyOrder.SORTED || order == KeyOrder.REVERSE)) {
+            return;
+        }
+        List<Token> insertions = insertionOrder(keys, order);
+        List<Token> lookups = lookupOrder(keys, order);
+        String modeName = mode.name();
+        String orderName = order.name().toLowerCase(Locale.ROOT);
+
+        run("bst.add", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                BST<Token> tree = new BST<>(mode);
+                for (Token key : insertions) {
+                    tree.add(key);
+                }
+                return tree;
+            }
+        });
+        run("bst.findThenAdd", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                BST<Token> tree = new BST<>(mode);
+                for (Token key : lookups) {
+                    Token word = new Token(key.toString());
+                    Token existing = tree.find(word);
+                    if (existing == null) {
+                        tree.add(word);
+                    } else {
+                        existing.incrementCount();
+                    }
+                }
+                return tree;
+            }
+        });
+        run("bst.merge", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                BST<Token> tree = new BST<>(mode);
+                for (Token key : lookups) {
+                    tree.merge(new Token(key.toString()), Token::incrementCount);
+                }
+                return tree;
+            }
+        });
+        BST<Token> built = build(insertions, mode);
+        run("bst.find", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                int found = 0;
+                for (Token key : lookups) {
+                    if (built.find(key) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+        run("bst.delete", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return build(insertions, mode); }
+            @SuppressWarnings("unchecked")
+            public Object run(Object state) {
+                BST<Token> tree = (BST<Token>) state;
+                for (Token key : insertions) {
+                    tree.delete(key);
+                }
+                return tree;
+            }
+        });
+        run("bst.inOrderIterator", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return drain(new BST.InOrderIterator<>(built));
+            }
+        });
+        run("bst.inOrderIterator.top10", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                Iterator<Token> iterator = new BST.InOrderIterator<>(built);
+                Object last = null;
+                for (int i = 0; i < 10 && iterator.hasNext(); i++) {
+                    last = iterator.next();
+                }
+                return last;
+            }
+        });
+        run("bst.levelOrderIterator", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return drain(new BST.LevelOrderIterator<>(built));
+            }
+        });
+        run("bst.height", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return built.height();
+            }
+        });
+    }
+
+    /**
+     * Method to benchmark the ArrayBST operations for one combination of parameters, to set
+     * against the BST ones
+     * @param keys the distinct keys
+     * @param order the order keys are inserted and looked up in
+     * @param mode the shape-maintenance mode of the tree
+     */
+    private static void benchmarkArrayTree(List<Token> keys, KeyOrder order, BST.Mode mode) {
+        int size = keys.size();
+        if (mode == BST.Mode.PLAIN && size > MAX_DEGENERATE_SIZE
+                && (order == KeyOrder.SORTED || order == KeyOrder.REVERSE)) {
+            return;
+        }
+        List<Token> insertions = insertionOrder(keys, order);
+        List<Token> lookups = lookupOrder(keys, order);
+        String modeName = mode.name();
+        String orderName = order.name().toLowerCase(Locale.ROOT);
+
+        run("arraybst.add", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return buildArray(insertions, mode);
+            }
+        });
+        run("arraybst.addCount", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                ArrayBST<Token> tree = new ArrayBST<>(mode);
+                for (Token key : lookups) {
+                    tree.addCount(key, Function.identity(), 1);
+                }
+                return tree;
+            }
+        });
+        ArrayBST<Token> built = buildArray(insertions, mode);
+        run("arraybst.find", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                int found = 0;
+                for (Token key : lookups) {
+                    if (built.find(key) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+        run("arraybst.delete", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return buildArray(insertions, mode); }
+            @SuppressWarnings("unchecked")
+            public Object run(Object state) {
+                ArrayBST<Token> tree = (ArrayBST<Token>) state;
+                for (Token key : insertions) {
+                    tree.delete(key);
+                }
+                return tree;
+            }
+        });
+        run("arraybst.inOrderIterator", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return drain(new ArrayBST.InOrderIterator<>(built));
+            }
+        });
+        run("arraybst.levelOrderIterator", modeName, orderName, size, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return drain(new ArrayBST.LevelOrderIterator<>(built));
+            }
+        });
+    }
+
+    /**
+     * Method to benchmark building a tree from sorted keys
+     * @param keys the distinct keys
+     */
+    private static void benchmarkBulkBuild(List<Token> keys) {
+        List<Token> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted);
+        run("bst.fromSorted", "AVL", "sorted", keys.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return BST.fromSorted(sorted, Comparator.naturalOrder(), BST.Mode.AVL);
+            }
+        });
+        run("arraybst.fromSorted", "AVL", "sorted", keys.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return ArrayBST.fromSorted(sorted, Comparator.naturalOrder(), BST.Mode.AVL);
+            }
+        });
+    }
+
+    /**
+     * Method to benchmark, and stress, a concurrent word index fed by several threads at once.
+     * Each thread adds its share of a Zipfian stream four times the size of the vocabulary,
+     * and every run checks that each word's count, and the total, match the stream exactly.
+     * @param keys the distinct keys
+     * @throws IllegalStateException if any count is wrong
+     */
+    private static void benchmarkConcurrentIndex(List<Token> keys) {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        List<Token> stream = zipfianStream(keys, keys.size() * 4);
+        Map<Token, Integer> expected = new HashMap<>();
+        for (Token key : stream) {
+            expected.merge(key, 1, Integer::sum);
+        }
+
+        run("concurrentindex.add", threads + "thr", "zipfian", stream.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                ConcurrentWordIndex index = new ConcurrentWordIndex();
+                List<Thread> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    List<Token> share = stream.subList(t * stream.size() / threads, (t + 1) * stream.size() / threads);
+                    workers.add(new Thread(() -> {
+                        for (Token key : share) {
+                            index.add(key);
+                        }
+                    }));
+                }
+                workers.forEach(Thread::start);
+                for (Thread worker : workers) {
+                    try {
+                        worker.join();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                checkCounts(index, expected, stream.size());
+                return index;
+            }
+        });
+    }
+
+    /**
+     * Method to benchmark counting a stream of words into the tree index and into the trie
+     * index, and to measure the heap each keeps once built
+     * @param order the name of the stream
+     * @param stream the words, with repeats
+     */
+    private static void benchmarkWordIndexes(String order, List<Token> stream) {
+        run("treeindex.add", "AVL", order, stream.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return count(new TreeWordIndex(), stream);
+            }
+        });
+        run("trieindex.add", "-", order, stream.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return count(new TrieWordIndex(), stream);
+            }
+        });
+        WordIndex tree = count(new TreeWordIndex(), stream);
+        WordIndex trie = count(new TrieWordIndex(), stream);
+        retained("treeindex.retained", "AVL", order, tree.size(), () -> count(new TreeWordIndex(), stream));
+        retained("trieindex.retained", "-", order, trie.size(), () -> count(new TrieWordIndex(), stream));
+        run("treeindex.iterator", "AVL", order, tree.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return drain(tree.iterator());
+            }
+        });
+        run("trieindex.iterator", "-", order, trie.size(), new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                return drain(trie.iterator());
+            }
+        });
+    }
+
+    /**
+     * Method to count how many comparisons a tree of each mode makes to count a stream of
+     * words, as A3.readFile() does, merging each word into the tree in turn
+     * @param order the name of the stream
+     * @param stream the words, with repeats
+     */
+    private static void benchmarkComparisons(String order, List<Token> stream) {
+        for (BST.Mode mode : BST.Mode.values()) {
+            String name = "bst.merge.comparisons";
+            if (!name.contains(filter)) {
+                return;
+            }
+            long[] comparisons = {0};
+            BST<Token> tree = new BST<>((a, b) -> {
+                comparisons[0]++;
+                return a.compareTo(b);
+            }, mode);
+            for (Token word : stream) {
+                tree.merge(word, Function.identity(), Token::incrementCount);
+            }
+            System.out.printf("%-28s %-6s %-11s %9d %14s %12.2f %14s %10s%n",
+                    name, mode.name(), order, stream.size(), "-", (double) comparisons[0] / stream.size(), "-", "-");
+        }
+    }
+
+    /**
+     * Method to count every word of a stream into an index
+     * @param index the index
+     * @param stream the words
+     * @return the index
+     */
+    private static WordIndex count(WordIndex index, List<Token> stream) {
+        for (Token word : stream) {
+            index.add(word);
+        }
+        return index;
+    }
+
+    /**
+     * Method to check that a word index holds exactly the expected counts
+     * @param index the index
+     * @param expected the count of every word
+     * @param total the sum of the counts
+     * @throws IllegalStateException if a word is missing or extra, or any count is wrong
+     */
+    private static void checkCounts(WordIndex index, Map<Token, Integer> expected, int total) {
+        int words = 0, sum = 0;
+        for (Token word : index) {
+            if (expected.getOrDefault(word, 0) != word.getCount()) {
+                throw new IllegalStateException("Wrong count for " + word.format());
+            }
+            words++;
+            sum += word.getCount();
+        }
+        if (words != expected.size() || sum != total) {
+            throw new IllegalStateException("Counted " + words + " words, " + sum + " in all; expected "
+                    + expected.size() + ", " + total);
+        }
+    }
+
+    /**
+     * Method to benchmark keeping a frequency tree in order while counts go up, as streaming
+     * mode does: each word of a Zipfian stream has its count incremented inside the tree,
+     * either by BST.reposition or by deleting and adding it again
+     * @param keys the distinct keys
+     */
+    private static void benchmarkReposition(List<Token> keys) {
+        List<Token> stream = zipfianStream(keys, keys.size());
+
+        run("bst.reposition", "AVL", "zipfian", keys.size(), new Benchmark() {
+            public Object setUp() { return new FrequencyTree(keys); }
+            public Object run(Object state) {
+                FrequencyTree counted = (FrequencyTree) state;
+                for (Token key : stream) {
+                    counted.tree.reposition(counted.tokens.get(key), Token::incrementCount);
+                }
+                return counted;
+            }
+        });
+        run("bst.deleteThenAdd", "AVL", "zipfian", keys.size(), new Benchmark() {
+            public Object setUp() { return new FrequencyTree(keys); }
+            public Object run(Object state) {
+                FrequencyTree counted = (FrequencyTree) state;
+                for (Token key : stream) {
+                    Token token = counted.tokens.get(key);
+                    counted.tree.delete(token);
+                    token.incrementCount();
+                    counted.tree.add(token);
+                }
+                return counted;
+            }
+        });
+    }
+
+    /**
+     * A frequency tree of fresh copies of the keys, all with a count of 1, and the copy of
+     * each key, since a key can no longer be looked up in the tree once its count changes.
+     */
+    private static class FrequencyTree {
+        private final BST<Token> tree = new BST<>(Token.CompFreqDesc, BST.Mode.AVL);
+        private final Map<Token, Token> tokens = new HashMap<>();
+
+        FrequencyTree(List<Token> keys) {
+            for (Token key : keys) {
+                Token token = new Token(key.toString());
+                tree.add(token);
+                tokens.put(key, token);
+            }
+        }
+    }
+
+    /**
+     * Method to benchmark sorting by the Token comparators, as createFreqLists does
+     * @param keys the distinct keys, given Zipfian counts here
+     */
+    private static void benchmarkComparators(List<Token> keys) {
+        Random random = new Random(SEED);
+        List<Token> counted = new ArrayList<>();
+        for (Token key : keys) {
+            Token token = new Token(key.toString());
+            token.addCount(zipfCount(random));
+            counted.add(token);
+        }
+        Collections.sort(counted);
+
+        run("token.sort.CompFreqDesc", "-", "sorted", keys.size(), new Benchmark() {
+            public Object setUp() { return new ArrayList<>(counted); }
+            @SuppressWarnings("unchecked")
+            public Object run(Object state) {
+                ((List<Token>) state).sort(Token.CompFreqDesc);
+                return state;
+            }
+        });
+        run("token.sort.CompLengthDesc", "-", "sorted", keys.size(), new Benchmark() {
+            public Object setUp() { return new ArrayList<>(counted); }
+            @SuppressWarnings("unchecked")
+            public Object run(Object state) {
+                ((List<Token>) state).sort(Token.CompLengthDesc);
+                return state;
+            }
+        });
+    }
+
+    /**
+     * Method to benchmark each stage of the A3 pipeline on a corpus
+     * @param corpus the name of the corpus
+     * @param text the UTF-8 text of the corpus
+     * @param words the number of words in the corpus
+     */
+    private static void benchmarkPipeline(String corpus, byte[] text, int words) {
+        run("a3.readFile", "AVL", corpus, words, new Benchmark() {
+            public Object setUp() {
+                A3.reset();
+                return null;
+            }
+            public Object run(Object state) {
+                A3.readFile(new Tokenizer(ByteBuffer.wrap(text)));
+                return null;
+            }
+        });
+        // The later stages work on what the last readFile left behind.
+        run("a3.createFreqLists", "AVL", corpus, words, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                A3.createFreqLists();
+                return null;
+            }
+        });
+        run("a3.printResults", "AVL", corpus, words, new Benchmark() {
+            public Object setUp() { return null; }
+            public Object run(Object state) {
+                PrintStream out = System.out;
+                System.setOut(NULL_OUT);
+                try {
+                    A3.printResults();
+                } finally {
+                    System.setOut(out);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Method to warm a benchmark up, then time it, and print one line of results
+     * @param name the benchmark
+     * @param mode the tree mode, or "-"
+     * @param order the key order or corpus
+     * @param size the number of elements each operation handles
+     * @param benchmark the benchmark
+     */
+    private static void run(String name, String mode, String order, int size, Benchmark benchmark) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        // Warm up for as long as the measurement will take.
+        measure(benchmark, timeMillis);
+        long[] totals = measure(benchmark, timeMillis);
+        long operations = totals[0], nanos = totals[1], bytes = totals[2];
+
+        double nsPerOp = (double) nanos / operations;
+        double allocationRate = (bytes / 1e6) / (nanos / 1e9);
+        System.out.printf("%-28s %-6s %-11s %9d %14.0f %12.1f %14d %10.1f%n",
+                name, mode, order, size, nsPerOp, nsPerOp / size, bytes / operations, allocationRate);
+    }
+
+    /**
+     * Method to measure and report the heap a structure keeps: the growth in the heap in use,
+     * after full collections, across building it
+     * @param name the benchmark
+     * @param mode the tree mode, or "-"
+     * @param order the key order or corpus
+     * @param size the number of elements the structure holds
+     * @param build builds the structure
+     */
+    private static void retained(String name, String mode, String order, int size, Supplier<Object> build) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        sink = null;
+        long before = heapAfterCollection();
+        sink = build.get();
+        long bytes = heapAfterCollection() - before;
+        System.out.printf("%-28s %-6s %-11s %9d %14s %12s %14d %10s%n",
+                name, mode, order, size, "-", String.format("%.1f", (double) bytes / size), bytes, "-");
+    }
+
+    /**
+     * Method to collect garbage several times and take the least heap seen in use, since a
+     * single collection may leave some garbage behind
+     * @return the bytes of heap in use
+     */
+    private static long heapAfterCollection() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Method to run a benchmark repeatedly for a while, timing only the operations
+     * @param benchmark the benchmark
+     * @param millis how long to keep running, at least three operations are always run
+     * @return the number of operations, the nanoseconds and the bytes allocated they took
+     */
+    private static long[] measure(Benchmark benchmark, long millis) {
+        long threadId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        long operations = 0, nanos = 0, bytes = 0;
+
+        while (operations < 3 || System.nanoTime() < deadline) {
+            Object state = benchmark.setUp();
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            sink = benchmark.run(state);
+            nanos += System.nanoTime() - start;
+            bytes += THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            operations++;
+        }
+        return new long[] {operations, nanos, bytes};
+    }
+
+    /**
+     * Method to generate distinct random words of the letters a-z
+     * @param count the number of words
+     * @param random the source of randomness
+     * @return the words, in random order
+     */
+    static List<Token> distinctWords(int count, Random random) {
+        Set<String> words = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        while (words.size() < count) {
+            word.setLength(0);
+            int length = 3 + random.nextInt(10);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        List<Token> tokens = new ArrayList<>();
+        for (String w : words) {
+            tokens.add(new Token(w));
+        }
+        return tokens;
+    }
+
+    /**
+     * Method to generate a Zipfian corpus: the i-th most common of the distinct words occurs
+     * with probability proportional to 1/i, and the words are separated by spaces and newlines
+     * @param wordCount the number of words in the corpus
+     * @param random the source of randomness
+     * @return the UTF-8 text
+     */
+    static byte[] zipfianCorpus(int wordCount, Random random) {
+        List<Token> vocabulary = distinctWords(Math.max(1, wordCount / 10), random);
+        ZipfSampler zipf = new ZipfSampler(vocabulary.size());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            text.append(vocabulary.get(zipf.sample(random))).append((i % 12 == 11) ? '\n' : ' ');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to order the distinct keys for insertion
+     * @param keys the distinct keys, in random order
+     * @param order the order wanted
+     * @return the keys in that order; Zipfian is the order of first occurrence in a Zipfian stream
+     */
+    private static List<Token> insertionOrder(List<Token> keys, KeyOrder order) {
+        List<Token> ordered = new ArrayList<>(keys);
+        switch (order) {
+            case SORTED:
+                Collections.sort(ordered);
+                break;
+            case REVERSE:
+                ordered.sort(Collections.reverseOrder());
+                break;
+            case ZIPFIAN:
+                Set<Token> firstSeen = new LinkedHashSet<>();
+                for (Token key : zipfianStream(keys, keys.size() * 4)) {
+                    firstSeen.add(key);
+                }
+                // Keys never drawn are inserted last, in random order.
+                firstSeen.addAll(keys);
+                ordered = new ArrayList<>(firstSeen);
+                break;
+            default:
+                break;
+        }
+        return ordered;
+    }
+
+    /**
+     * Method to make a stream of as many lookups as there are keys
+     * @param keys the distinct keys, in random order
+     * @param order the order wanted
+     * @return the lookups: each key once, in order, or Zipfian-distributed draws
+     */
+    private static List<Token> lookupOrder(List<Token> keys, KeyOrder order) {
+        return (order == KeyOrder.ZIPFIAN) ? zipfianStream(keys, keys.size()) : insertionOrder(keys, order);
+    }
+
+    /**
+     * Method to draw keys with Zipfian frequencies; rank i has probability proportional to 1/i
+     * @param keys the distinct keys, whose random order decides their ranks
+     * @param length the number of draws
+     * @return the draws
+     */
+    private static List<Token> zipfianStream(List<Token> keys, int length) {
+        Random random = new Random(SEED + 1);
+        ZipfSampler zipf = new ZipfSampler(keys.size());
+        List<Token> stream = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            stream.add(keys.get(zipf.sample(random)));
+        }
+        return stream;
+    }
+
+    /**
+     * Method to draw a count for a word from a heavy-tailed distribution
+     * @param random the source of randomness
+     * @return a count of at least zero
+     */
+    private static int zipfCount(Random random) {
+        return (int) Math.min(100_000, Math.floor(1 / (1 - random.nextDouble())) - 1);
+    }
+
+    /**
+     * Method to build a tree by adding keys in order
+     * @param keys the keys
+     * @param mode the mode of the tree
+     * @return the tree
+     */
+    private static BST<Token> build(List<Token> keys, BST.Mode mode) {
+        BST<Token> tree = new BST<>(mode);
+        for (Token key : keys) {
+            tree.add(key);
+        }
+        return tree;
+    }
+
+    /**
+     * Method to build an ArrayBST by adding keys one at a time
+     * @param keys the keys, in insertion order
+     * @param mode the shape-maintenance mode of the tree
+     * @return the tree
+     */
+    private static ArrayBST<Token> buildArray(List<Token> keys, BST.Mode mode) {
+        ArrayBST<Token> tree = new ArrayBST<>(mode);
+        for (Token key : keys) {
+            tree.add(key);
+        }
+        return tree;
+    }
+
+    /**
+     * Method to exhaust an iterator
+     * @param iterator the iterator
+     * @return the number of elements it yielded
+     */
+    private static int drain(Iterator<?> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Method to count the words in a text as A3 does
+     * @param text the UTF-8 text
+     * @return the number of words
+     */
+    private static int countWords(byte[] text) {
+        Tokenizer tokenizer = new Tokenizer(ByteBuffer.wrap(text));
+        int count = 0;
+        while (tokenizer.hasNext()) {
+            tokenizer.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Method to split a text into words as A3 does
+     * @param text the UTF-8 text
+     * @return the words, in order, with repeats
+     */
+    private static List<Token> words(byte[] text) {
+        Tokenizer tokenizer = new Tokenizer(ByteBuffer.wrap(text));
+        List<Token> words = new ArrayList<>();
+        while (tokenizer.hasNext()) {
+            words.add(new Token(tokenizer.next()));
+        }
+        return words;
+    }
+
+    /**
+     * Samples ranks 0..n-1 with probability proportional to 1/(rank + 1), by binary search of
+     * the cumulative distribution.
+     */
+    static class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int n) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += 1.0 / (i + 1);
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, (index >= 0) ? index : -index - 1);
+        }
+    }
+}
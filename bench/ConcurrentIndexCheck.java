@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check that a ConcurrentWordIndex loses no counts when many threads add to it at
+ * once, and that a reader walking it meanwhile never sees a word before it is counted.
+ * <p>
+ * Each round, the threads are released together to add their shares of a skewed stream of
+ * words, so that most adds land on the same few words, while one more thread iterates over
+ * the index again and again, checking that the words come in order and every count is at
+ * least 1. Afterwards the size, each word's count and the total are checked against the
+ * stream.
+ * <p>
+ * Usage: java ConcurrentIndexCheck [threads] [streamSize] [rounds]
+ */
+public class ConcurrentIndexCheck {
+    private static final int VOCABULARY = 5_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0])
+                : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int streamSize = (args.length > 1) ? Integer.parseInt(args[1]) : 200_000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+        List<Token> words = new ArrayList<>();
+        for (int i = 0; i < VOCABULARY; i++) {
+            words.add(new Token(name(i)));
+        }
+        Random random = new Random(42);
+        int[] stream = new int[streamSize];
+        int[] expected = new int[VOCABULARY];
+        for (int i = 0; i < streamSize; i++) {
+            // Roughly Zipfian: small word numbers are far more likely.
+            stream[i] = (int) Math.pow(VOCABULARY, random.nextDouble()) - 1;
+            expected[stream[i]]++;
+        }
+        int distinct = 0;
+        for (int count : expected) {
+            distinct += (count > 0) ? 1 : 0;
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            check(words, stream, expected, distinct, threads);
+        }
+        System.out.printf("%d threads, %d rounds of %,d words: ok (%.1f s)%n",
+                threads, rounds, streamSize, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Method to add a stream to a new index from many threads, with a reader walking it
+     * meanwhile, and check the counts
+     * @param words the words, by number
+     * @param stream the numbers of the words to add, in order
+     * @param expected how many times each word occurs in the stream
+     * @param distinct how many different words occur in the stream
+     * @param threads the number of threads to add from
+     * @throws IllegalStateException if the reader saw a word out of order or not yet counted,
+     *                               or any count is wrong at the end
+     */
+    private static void check(List<Token> words, int[] stream, int[] expected, int distinct, int threads)
+            throws InterruptedException {
+        ConcurrentWordIndex index = new ConcurrentWordIndex();
+        CountDownLatch ready = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(threads);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) t * stream.length / threads);
+            int to = (int) ((long) (t + 1) * stream.length / threads);
+            workers.add(new Thread(() -> {
+                await(ready);
+                for (int i = from; i < to; i++) {
+                    index.add(words.get(stream[i]));
+                }
+                finished.countDown();
+            }));
+        }
+        Thread reader = new Thread(() -> {
+            await(ready);
+            do {
+                Token previous = null;
+                for (Iterator<Token> it = index.iterator(); it.hasNext(); ) {
+                    Token word = it.next();
+                    if (word.getCount() < 1) {
+                        failure.compareAndSet(null, word + " was seen with a count of " + word.getCount());
+                    }
+                    if (previous != null && previous.compareTo(word) >= 0) {
+                        failure.compareAndSet(null, word + " was seen after " + previous);
+                    }
+                    previous = word;
+                }
+            } while (finished.getCount() > 0);
+        });
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        reader.start();
+        ready.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        reader.join();
+
+        if (failure.get() != null) {
+            throw new IllegalStateException(failure.get());
+        }
+        expect("size", index.size(), distinct);
+        long total = 0;
+        for (Token word : index) {
+            expect("count of " + word, word.getCount(), expected[number(word.toString())]);
+            total += word.getCount();
+        }
+        expect("total", total, stream.length);
+    }
+
+    /**
+     * Method to wait for the threads of a round to be released together
+     * @param latch the latch that releases them
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method to name a word by its number, in letters, since words are made of letters only
+     * @param number the number
+     * @return the name, such as "bc" for 28
+     */
+    private static String name(int number) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return name.reverse().toString();
+    }
+
+    /**
+     * Method to turn the name of a word back into its number
+     * @param name the name
+     * @return the number
+     */
+    private static int number(String name) {
+        int number = 0;
+        for (int i = 0; i < name.length(); i++) {
+            number = number * 26 + (name.charAt(i) - 'a');
+        }
+        return number;
+    }
+
+    /**
+     * Method to check a figure
+     * @param what what the figure is
+     * @param actual the figure
+     * @param expected what it must be
+     * @throws IllegalStateException if they differ
+     */
+    private static void expect(String what, long actual, long expected) {
+        if (actual != expected) {
+            throw new IllegalStateException(what + " was " + actual + ", expected " + expected);
+        }
+    }
+}
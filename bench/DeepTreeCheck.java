@@ -0,0 +1,86 @@
+import java.util.Iterator;
+
+/**
+ * Stress check that no BST operation recurses on the depth of the tree: it builds trees that
+ * are single chains of nodes, walks them, and empties them again, and is meant to be run with
+ * a thread stack far too small for a recursive walk of such a chain.
+ * <p>
+ * A PLAIN tree is built from sorted keys, which makes a chain but costs O(n^2) comparisons,
+ * so it is kept to a size that finishes in seconds. A SPLAY tree built from sorted keys is
+ * the same chain for O(1) a key, so it is taken to a million nodes. Every key is then
+ * deleted, and the size and height checked at each stage.
+ * <p>
+ * Usage: java -Xss256k DeepTreeCheck [plainSize] [splaySize]
+ */
+public class DeepTreeCheck {
+    public static void main(String[] args) {
+        int plainSize = (args.length > 0) ? Integer.parseInt(args[0]) : 50_000;
+        int splaySize = (args.length > 1) ? Integer.parseInt(args[1]) : 1_000_000;
+        check(BST.Mode.PLAIN, plainSize);
+        check(BST.Mode.SPLAY, splaySize);
+    }
+
+    /**
+     * Method to build a chain from sorted keys, walk it, and delete every key
+     * @param mode the mode of the tree, which must leave sorted keys in a chain
+     * @param size the number of keys
+     * @throws IllegalStateException if the size, height or order is ever wrong
+     */
+    private static void check(BST.Mode mode, int size) {
+        long start = System.nanoTime();
+        BST<Integer> tree = new BST<>(mode);
+        for (int i = 0; i < size; i++) {
+            tree.add(i);
+        }
+        expect(mode + " size after adds", tree.size(), size);
+        expect(mode + " height after adds", tree.height(), size);
+        expect(mode + " measured height", tree.stats().getHeight(), size);
+
+        Iterator<Integer> inOrder = new BST.InOrderIterator<>(tree);
+        for (int i = 0; i < size; i++) {
+            expect(mode + " in-order element", inOrder.next(), i);
+        }
+        expect(mode + " level-order count", count(new BST.LevelOrderIterator<>(tree)), size);
+        if (mode == BST.Mode.PLAIN) {
+            // Finding the deepest key walks the whole chain.
+            expect(mode + " find deepest", tree.find(size - 1), size - 1);
+        }
+
+        // A PLAIN chain of sorted keys leans right, so the smallest key is always the root;
+        // a SPLAY one leans left, so the largest is.
+        for (int i = 0; i < size; i++) {
+            tree.delete((mode == BST.Mode.PLAIN) ? i : size - 1 - i);
+        }
+        expect(mode + " size after deletes", tree.size(), 0);
+        expect(mode + " height after deletes", tree.height(), 0);
+        System.out.printf("%-6s %,10d keys in a chain: ok (%.1f s)%n",
+                mode, size, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Method to exhaust an iterator
+     * @param iterator the iterator
+     * @return the number of elements it yielded
+     */
+    private static int count(Iterator<?> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Method to check a figure
+     * @param what what the figure is
+     * @param actual the figure
+     * @param expected what it must be
+     * @throws IllegalStateException if they differ
+     */
+    private static void expect(String what, int actual, int expected) {
+        if (actual != expected) {
+            throw new IllegalStateException(what + " was " + actual + ", expected " + expected);
+        }
+    }
+}
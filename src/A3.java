@@ -1,7 +1,23 @@
 //import tech.vanyo.TreePrinter;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Scanner;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Main class to handle main functionality of the program
@@ -9,10 +25,14 @@ import java.util.Scanner;
 public class A3 
 {
    /* The lists (trees) of words. Alphabetic, by Frequency 
-      and by length. */
-   private static final BST<Token> wordsByNaturalOrder = new BST<>();
-   private static final BST<Token> wordsByFrequencyDescending = new BST<>(Token.CompFreqDesc);
-   private static final BST<Token> wordsByLengthDescending = new BST<>(Token.CompLengthDesc);
+      and by length. The alphabetic tree balances itself, since every word
+      read is looked up in it; it is kept in the word index chosen by --index. */
+   private static final List<String> INDEX_KINDS = Arrays.asList("tree", "array", "offheap", "concurrent",
+           "trie", "splay");
+   private static String indexKind = "tree";
+   private static WordIndex wordsByNaturalOrder = new TreeWordIndex();
+   private static BST<Token> wordsByFrequencyDescending = new BST<>(Token.CompFreqDesc);
+   private static BST<Token> wordsByLengthDescending = new BST<>(Token.CompLengthDesc);
    
    // there are 103 stopwords in this list
    private static final String[] stopwords = {
@@ -28,17 +48,83 @@ public class A3
          "man", "woman", "would", "should", "dont", "after", "before", "im", "men"
    };
 
+   // The stop words hashed for constant-time rejection while reading, and the ones seen so far.
+   private static final Set<Token> stopWordSet =
+         Arrays.stream(stopwords).map(Token::new).collect(Collectors.toCollection(HashSet::new));
+   private static final Set<Token> stopWordsSeen = new HashSet<>();
+
+   // Where the text of the stop words seen is stored.
+   private static WordArena arena = new WordArena();
+
    private static int totalWordCount = 0;
    private static int stopWordCount = 0;
 
-   private static final Scanner standardInput = new Scanner(System.in);
+   // The number of words printed in the most frequent and longest sections.
+   private static final int TOP_COUNT = 10;
+   /* The most frequent and longest words, and what is needed to report on the frequency and
+      length trees, gathered in one pass over the alphabetic tree. */
+   private static TopK<Token> mostFrequent = new TopK<>(TOP_COUNT, Token.CompFreqDesc);
+   private static TopK<Token> longest = new TopK<>(TOP_COUNT, Token.CompLengthDesc);
+   private static int frequentWordCount = 0;
+   private static long totalWordLength = 0;
+   // Whether to build the full frequency and length trees, or only select the top words.
+   private static boolean buildSecondaryTrees = true;
+   // Whether the frequency and length trees were kept up to date while reading, so need no
+   // building.
+   private static boolean liveTrees = false;
+
+   // The file named on the command line, or null to read standard input.
+   private static Path inputFile = null;
+   // The number of threads to count words on.
+   private static int threads = 1;
+   // Per-phase timing and allocation, recorded only when asked for, and where to write them.
+   private static Metrics metrics = null;
+   private static Path metricsFile = null;
+   // Time spent inside the tokenizer while reading, when metrics are recorded.
+   private static long tokenizeNanos = 0;
+   // In streaming mode, how many words or nanoseconds apart rolling reports are printed.
+   private static long reportEveryWords = 0;
+   private static long reportEveryNanos = 0;
+   // In windowed mode, how many words or nanoseconds back the counts reach, and the buckets
+   // the window is split into, each expiring at once.
+   private static long windowWords = 0;
+   private static long windowNanos = 0;
+   private static final int WINDOW_BUCKETS = 16;
+   // Held while a word is counted or a rolling report printed in streaming mode, since
+   // reports by time are printed from another thread.
+   private static final Object streamLock = new Object();
+   // Where to save the word index once it is read, and where to load one from instead of
+   // reading any input.
+   private static Path saveIndexFile = null;
+   private static Path loadIndexFile = null;
+   // Queries on the alphabetic and frequency trees to answer after the report, such as
+   // "prefix:whal", in the order given.
+   private static final List<String> QUERY_KINDS = Arrays.asList("prefix", "range", "floor", "ceiling",
+           "lower", "higher", "select", "rank");
+   private static final List<String> queries = new ArrayList<>();
 
     /**
      * Main Method
-     * @param args command lines args
+     * @param args command lines args: [--file path] to memory-map a file instead of
+     *             reading standard input, [--threads n] to count words on n threads,
+     *             [--top-only] to skip building the full frequency and length trees,
+     *             [--metrics json] to write per-phase metrics to standard error, or to the
+     *             file given by [--metrics-file path],
+     *             [--index tree|array|offheap|concurrent|trie|splay] to choose where the
+     *             alphabetic tree is kept (offheap is limited by the JVM's
+     *             -XX:MaxDirectMemorySize), and [--report-every n] or
+     *             [--report-seconds t] to stream: print a rolling report every n words or
+     *             t seconds while reading an input that may never end, with
+     *             [--window-words n] or [--window-seconds t] to count only the last n words
+     *             or t seconds of it; [--save-index path] saves the word index once it is
+     *             read, and [--load-index path] reports on a saved index instead of reading;
+     *             each [--query kind:words] is answered after the report (see printQueries())
      */
    public static void main(String[] args)
    {
+       parseArguments(args);
+       wordsByNaturalOrder = newIndex();
+
 /*
        // TODO: remove after finishing check that delete works well.
        TreePrinter<BST<Token>.BSTNode> treePrinter = new TreePrinter<>(n -> n.getData().format(), n -> n.getLeft(), n -> n.getRight());
@@ -48,147 +134,873 @@ public class A3
        treePrinter.setLrAgnostic(false);
 */
 
-       readFile();
-
-/*
-       // TODO: remove after finishing check that delete works well.
-       System.out.println("The tree before deleting stop words.");
-       treePrinter.printTree(wordsByNaturalOrder.root);
-*/
-
-       removeStop();
+       beginPhase("read");
+       if (loadIndexFile != null) {
+           try {
+               loadIndex(loadIndexFile);
+           } catch (IOException e) {
+               System.err.println("Cannot load " + loadIndexFile + ": " + e.getMessage());
+               System.exit(1);
+           }
+       } else {
+           readInput();
+       }
+       if (saveIndexFile != null) {
+           try {
+               IndexSnapshot.write(saveIndexFile, wordsByNaturalOrder, totalWordCount, stopWordCount);
+           } catch (IOException e) {
+               System.err.println("Cannot write " + saveIndexFile + ": " + e.getMessage());
+               System.exit(1);
+           }
+       }
 
 /*
        // TODO: remove after finishing check that delete works well.
-       System.out.println("\n\nThe tree after deleting stop words.");
+       System.out.println("The tree after reading the input.");
        treePrinter.printTree(wordsByNaturalOrder.root);
 */
 
+       beginPhase("createFreqLists");
        createFreqLists();
+       beginPhase("printResults");
        printResults();
+       printQueries();
+
+       if (metrics != null) {
+           writeMetrics();
+       }
+   }
+
+    /**
+     * Method to read the input the command line names, in the way its options choose
+     */
+   private static void readInput()
+   {
+       try {
+           if (threads > 1) {
+               readFileParallel();
+           } else if (streaming()) {
+               readStream((inputFile == null) ? new Tokenizer(System.in) : new Tokenizer(inputFile));
+           } else {
+               readFile((inputFile == null) ? new Tokenizer(System.in) : new Tokenizer(inputFile));
+           }
+       } catch (IOException e) {
+           System.err.println("Cannot read " + ((inputFile == null) ? "standard input" : inputFile)
+                   + ": " + e.getMessage());
+           System.exit(1);
+       }
+   }
+
+    /**
+     * Method to apply the command line options, exiting with a usage message on a bad one
+     * @param args command lines args
+     */
+   private static void parseArguments(String[] args)
+   {
+       for (int i = 0; i < args.length; i++) {
+           switch (args[i]) {
+               case "--file":
+                   if (i + 1 >= args.length) {
+                       usage("--file requires a path");
+                   }
+                   inputFile = Paths.get(args[++i]);
+                   break;
+               case "--threads":
+                   try {
+                       threads = Integer.parseInt(args[++i]);
+                   } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                       usage("--threads requires a number");
+                   }
+                   if (threads < 1) {
+                       usage("--threads must be at least 1");
+                   }
+                   break;
+               case "--index":
+                   if (i + 1 >= args.length || !INDEX_KINDS.contains(args[i + 1])) {
+                       usage("--index requires a kind, one of " + String.join(", ", INDEX_KINDS));
+                   }
+                   indexKind = args[++i];
+                   break;
+               case "--report-every":
+                   try {
+                       reportEveryWords = Long.parseLong(args[++i]);
+                   } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                       usage("--report-every requires a number of words");
+                   }
+                   if (reportEveryWords < 1) {
+                       usage("--report-every must be at least 1");
+                   }
+                   break;
+               case "--report-seconds":
+                   try {
+                       reportEveryNanos = (long) (Double.parseDouble(args[++i]) * 1e9);
+                   } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                       usage("--report-seconds requires a number of seconds");
+                   }
+                   if (reportEveryNanos <= 0) {
+                       usage("--report-seconds must be positive");
+                   }
+                   break;
+               case "--window-words":
+                   try {
+                       windowWords = Long.parseLong(args[++i]);
+                   } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                       usage("--window-words requires a number of words");
+                   }
+                   if (windowWords < 1) {
+                       usage("--window-words must be at least 1");
+                   }
+                   break;
+               case "--window-seconds":
+                   try {
+                       windowNanos = (long) (Double.parseDouble(args[++i]) * 1e9);
+                   } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                       usage("--window-seconds requires a number of seconds");
+                   }
+                   if (windowNanos <= 0) {
+                       usage("--window-seconds must be positive");
+                   }
+                   break;
+               case "--save-index":
+                   if (i + 1 >= args.length) {
+                       usage("--save-index requires a path");
+                   }
+                   saveIndexFile = Paths.get(args[++i]);
+                   break;
+               case "--load-index":
+                   if (i + 1 >= args.length) {
+                       usage("--load-index requires a path");
+                   }
+                   loadIndexFile = Paths.get(args[++i]);
+                   break;
+               case "--query":
+                   if (i + 1 >= args.length || !QUERY_KINDS.contains(args[i + 1].split(":", 2)[0])
+                           || !args[i + 1].contains(":")) {
+                       usage("--query requires kind:words, where kind is one of " + String.join(", ", QUERY_KINDS));
+                   }
+                   if (args[i + 1].startsWith("range:") && !args[i + 1].contains(",")) {
+                       usage("--query range requires two words, as in range:ahab,ark");
+                   }
+                   if (args[i + 1].startsWith("select:")) {
+                       try {
+                           if (Integer.parseInt(args[i + 1].substring("select:".length())) < 1) {
+                               usage("--query select requires a rank of at least 1");
+                           }
+                       } catch (NumberFormatException e) {
+                           usage("--query select requires a rank, as in select:500");
+                       }
+                   }
+                   queries.add(args[++i]);
+                   break;
+               case "--top-only":
+                   buildSecondaryTrees = false;
+                   break;
+               case "--metrics":
+                   if (i + 1 >= args.length || !args[++i].equals("json")) {
+                       usage("--metrics requires a format, which must be json");
+                   }
+                   metrics = new Metrics();
+                   break;
+               case "--metrics-file":
+                   if (i + 1 >= args.length) {
+                       usage("--metrics-file requires a path");
+                   }
+                   metricsFile = Paths.get(args[++i]);
+                   metrics = new Metrics();
+                   break;
+               default:
+                   usage("Unknown option " + args[i]);
+           }
+       }
+       if (streaming() && (threads > 1 || !indexKind.equals("tree"))) {
+           usage("Streaming reports and windows need one thread and the tree index");
+       }
+       if (windowWords > 0 && windowNanos > 0) {
+           usage("Only one of --window-words and --window-seconds can be given");
+       }
+       if (!queries.isEmpty() && !indexKind.equals("tree")
+               && !(indexKind.equals("trie") && queries.stream().allMatch(q -> q.startsWith("prefix:")))) {
+           usage("--query needs the tree index, or the trie index for prefix queries only");
+       }
+       if (!buildSecondaryTrees && queries.stream().anyMatch(q -> q.startsWith("select:") || q.startsWith("rank:"))) {
+           usage("--query select and rank need the frequency tree, which --top-only skips");
+       }
+       if (loadIndexFile != null && (inputFile != null || threads > 1 || streaming()
+               || !(indexKind.equals("tree") || indexKind.equals("array")))) {
+           usage("--load-index reads no input, and loads into the tree or array index");
+       }
+   }
+
+    /**
+     * Method to print a usage message to standard error and exit
+     * @param problem what was wrong with the command line
+     */
+   private static void usage(String problem)
+   {
+       System.err.println(problem);
+       System.err.println("Usage: java A3 [--file <path>] [--threads <n>] [--top-only]"
+               + " [--metrics json] [--metrics-file <path>] [--index tree|array|offheap|concurrent|trie|splay]"
+               + " [--report-every <n>] [--report-seconds <t>] [--window-words <n>] [--window-seconds <t>]"
+               + " [--save-index <path>] [--load-index <path>] [--query <kind>:<words>] [< input]");
+       System.err.println("--index offheap keeps the words in direct memory, which is limited to the"
+               + " maximum heap size unless the JVM is given -XX:MaxDirectMemorySize=<size>");
+       System.exit(1);
+   }
+
+    /**
+     * Method to start timing a phase of main(), if metrics are being recorded
+     * @param phase the name of the phase
+     */
+   private static void beginPhase(String phase)
+   {
+       if (metrics != null) {
+           metrics.begin(phase);
+       }
+   }
+
+    /**
+     * Method to write the metrics recorded, with figures on the words read and the trees built,
+     * as JSON to standard error or the metrics file
+     */
+   private static void writeMetrics()
+   {
+       metrics.end();
+       metrics.put("read", "words", totalWordCount);
+       metrics.put("read", "wordsPerSecond", totalWordCount / metrics.seconds("read"));
+       metrics.put("read", "threads", threads);
+       if (threads == 1) {
+           // Whatever is left of the read phase went to stop-word checks and tree insertion.
+           metrics.put("read", "tokenizeMillis", tokenizeNanos / 1e6);
+       }
+
+       Map<String, Object> trees = new LinkedHashMap<>();
+       trees.put("alphabetic", indexMetrics(wordsByNaturalOrder));
+       if (secondaryTreesOnHeap()) {
+           trees.put("frequency", treeMetrics(wordsByFrequencyDescending.size(), wordsByFrequencyDescending.stats()));
+           trees.put("length", treeMetrics(wordsByLengthDescending.size(), wordsByLengthDescending.stats()));
+       }
+       metrics.put("trees", trees);
+
+       String json = metrics.toJson();
+       if (metricsFile == null) {
+           System.err.println(json);
+       } else {
+           try {
+               Files.write(metricsFile, (json + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+           } catch (IOException e) {
+               System.err.println("Cannot write " + metricsFile + ": " + e.getMessage());
+               System.exit(1);
+           }
+       }
+   }
+
+    /**
+     * Method to describe the word index for the metrics; only a tree on the heap, of nodes or
+     * of arrays, can be described in full
+     * @param index the word index
+     * @return the figures about the index
+     */
+   private static Map<String, Object> indexMetrics(WordIndex index)
+   {
+       if (index instanceof TreeWordIndex) {
+           return treeMetrics(index.size(), ((TreeWordIndex) index).getTree().stats());
+       }
+       if (index instanceof ArrayWordIndex) {
+           return treeMetrics(index.size(), ((ArrayWordIndex) index).getTree().stats());
+       }
+       Map<String, Object> figures = new LinkedHashMap<>();
+       figures.put("index", indexKind);
+       figures.put("size", index.size());
+       int height = index.height();
+       figures.put("height", (height < 0) ? null : height);
+       figures.put("optimumHeight", optHeight(index.size()));
+       if (index instanceof TrieWordIndex) {
+           figures.put("nodes", ((TrieWordIndex) index).nodeCount());
+           figures.put("depth", ((TrieWordIndex) index).depth());
+       }
+       return figures;
+   }
+
+    /**
+     * Method to make an empty word index of the kind chosen on the command line
+     * @return the new index
+     */
+   private static WordIndex newIndex()
+   {
+       switch (indexKind) {
+           case "array":
+               return new ArrayWordIndex();
+           case "offheap":
+               return new OffHeapWordIndex();
+           case "concurrent":
+               return new ConcurrentWordIndex();
+           case "trie":
+               return new TrieWordIndex();
+           case "splay":
+               return new TreeWordIndex(BST.Mode.SPLAY);
+           default:
+               return new TreeWordIndex();
+       }
+   }
+
+    /**
+     * Method to describe the shape of a tree for the metrics
+     * @param size the number of elements in the tree
+     * @param stats the shape of the tree
+     * @return the figures about the tree
+     */
+   private static Map<String, Object> treeMetrics(int size, BST.Stats stats)
+   {
+       Map<String, Object> figures = new LinkedHashMap<>();
+       figures.put("size", size);
+       figures.put("height", stats.getHeight());
+       figures.put("optimumHeight", optHeight(size));
+       figures.put("meanDepth", stats.getMeanDepth());
+       figures.put("leafCount", stats.getLeafCount());
+       figures.put("imbalance", stats.getImbalance());
+       figures.put("depthHistogram", stats.getDepthHistogram());
+       return figures;
+   }
+
+    /**
+     * Method to forget every word read, so the stages can be run again on new input (as the
+     * benchmarks do)
+     */
+   static void reset()
+   {
+       wordsByNaturalOrder = newIndex();
+       wordsByFrequencyDescending = new BST<>(Token.CompFreqDesc);
+       wordsByLengthDescending = new BST<>(Token.CompLengthDesc);
+       stopWordsSeen.clear();
+       liveTrees = false;
+       arena = new WordArena();
+       totalWordCount = 0;
+       stopWordCount = 0;
+       tokenizeNanos = 0;
    }
 
     /**
      * Method to print results of the required trees in desired orders
      */
-   private static void printResults()
+   static void printResults()
+   {
+       printSummary(mostFrequent.toSortedList(), longest.toSortedList());
+
+       System.out.println("\nAll");
+       //To print words in natural order
+       for (Token t : wordsByNaturalOrder) {
+           System.out.println(t.format());
+       }
+
+       printHeights(secondaryTreeHeight(wordsByFrequencyDescending),
+             secondaryTreeHeight(wordsByLengthDescending));
+   }
+
+    /**
+     * Method to answer each query given with --query, looking only at the part of the
+     * alphabetic tree it needs. A query is prefix:p for the words starting with p,
+     * range:a,b for the words from a to b inclusive, floor:w, ceiling:w, lower:w or
+     * higher:w for the word nearest w in that direction, select:k for the kth most frequent
+     * word, or rank:w for the rank of w among the frequent words.
+     */
+   private static void printQueries()
+   {
+       if (queries.isEmpty()) {
+           return;
+       }
+       if (wordsByNaturalOrder instanceof TrieWordIndex) {
+           for (String query : queries) {
+               System.out.println("\nQuery " + query);
+               printWords(((TrieWordIndex) wordsByNaturalOrder).prefix(queryWord(query.substring("prefix:".length()))));
+           }
+           return;
+       }
+       TreeWordIndex index = (TreeWordIndex) wordsByNaturalOrder;
+       BST<Token> tree = index.getTree();
+       for (String query : queries) {
+           System.out.println("\nQuery " + query);
+           String kind = query.substring(0, query.indexOf(':'));
+           String words = query.substring(query.indexOf(':') + 1);
+           switch (kind) {
+               case "prefix":
+                   printWords(index.prefix(queryWord(words)));
+                   break;
+               case "range":
+                   int comma = words.indexOf(',');
+                   printWords(tree.subSet(queryWord(words.substring(0, comma)), true,
+                           queryWord(words.substring(comma + 1)), true));
+                   break;
+               case "floor":
+                   printWord(tree.floor(queryWord(words)));
+                   break;
+               case "ceiling":
+                   printWord(tree.ceiling(queryWord(words)));
+                   break;
+               case "lower":
+                   printWord(tree.lower(queryWord(words)));
+                   break;
+               case "select":
+                   int k = Integer.parseInt(words);
+                   printWord((k >= 1 && k <= wordsByFrequencyDescending.size())
+                           ? wordsByFrequencyDescending.select(k - 1) : null);
+                   break;
+               case "rank":
+                   // The word's count, which places it in the frequency tree, is in the index.
+                   Token word = tree.find(queryWord(words));
+                   if (word == null || wordsByFrequencyDescending.find(word) == null) {
+                       printWord(null);
+                   } else {
+                       System.out.println(word.format() + " is number "
+                               + (wordsByFrequencyDescending.rank(word) + 1) + " by frequency");
+                   }
+                   break;
+               case "higher":
+                   printWord(tree.higher(queryWord(words)));
+                   break;
+               default:
+                   // parseArguments only lets the kinds above through.
+                   throw new IllegalStateException("Unknown query kind " + kind);
+           }
+       }
+   }
+
+    /**
+     * Method to turn a word of a query into a token, folded just as the words read are
+     * @param word the word as given on the command line
+     * @return the token, which is empty if word has no letters
+     */
+   private static Token queryWord(String word)
+   {
+       Tokenizer folded = new Tokenizer(ByteBuffer.wrap(word.getBytes(StandardCharsets.UTF_8)));
+       return folded.hasNext() ? new Token(folded.next()) : new Token("");
+   }
+
+    /**
+     * Method to print each word an iterator yields
+     * @param words the words
+     */
+   private static void printWords(Iterator<Token> words)
+   {
+       while (words.hasNext()) {
+           System.out.println(words.next().format());
+       }
+   }
+
+    /**
+     * Method to print a single word found by a query
+     * @param word the word, or null if none was found
+     */
+   private static void printWord(Token word)
+   {
+       System.out.println((word == null) ? "(none)" : word.format());
+   }
+
+    /**
+     * Method to print a rolling report in streaming mode: every section of printResults but
+     * the full word list, read straight from the live trees
+     */
+   private static void printRollingReport()
+   {
+       frequentWordCount = wordsByFrequencyDescending.size();
+       String window = (windowWords > 0) ? ", counting the last " + windowWords + " words"
+               : (windowNanos > 0) ? ", counting the last " + (windowNanos / 1e9) + " seconds" : "";
+       System.out.println("=== After " + totalWordCount + " words" + window + " ===");
+       printSummary(first(wordsByFrequencyDescending, TOP_COUNT), first(wordsByLengthDescending, TOP_COUNT));
+       printHeights(wordsByFrequencyDescending.height(), wordsByLengthDescending.height());
+       System.out.println();
+       System.out.flush();
+   }
+
+    /**
+     * Method to print the word counts and the most frequent and longest words
+     * @param frequentWords the most frequent words, in order
+     * @param longestWords the longest words, in order
+     */
+   private static void printSummary(List<Token> frequentWords, List<Token> longestWords)
    {
        System.out.println("Total Words: " + totalWordCount);
        System.out.println("Unique Words: " + wordsByNaturalOrder.size()); 
        System.out.println("Stop Words: " + stopWordCount);
 
-       int i;
-
-       if (wordsByFrequencyDescending.size() != 0) {
-           int sizePrinted = Math.min(wordsByFrequencyDescending.size(), 10);
-           System.out.println("\n" + sizePrinted + " Most Frequent");
+       if (frequentWordCount != 0) {
+           System.out.println("\n" + frequentWords.size() + " Most Frequent");
            //To print words in order of descending frequency
-           Iterator<Token> wordsByFreqDescInOrder = new BST.InOrderIterator<>(wordsByFrequencyDescending);
-           i = 10;
-           while ((i > 0) && wordsByFreqDescInOrder.hasNext()) {
-               --i; // Decrement the sentinel.
-               Token t = wordsByFreqDescInOrder.next();
+           for (Token t : frequentWords) {
                System.out.println(t.format());
            }
        } else {
            System.out.println("\nNo words with a frequency greater than 2 existed in the input.");
        }
 
-       if (wordsByLengthDescending.size() != 0) {
-           int sizePrinted = Math.min(wordsByLengthDescending.size(), 10);
-           System.out.println("\n" + sizePrinted + " Longest");
+       if (!longestWords.isEmpty()) {
+           System.out.println("\n" + longestWords.size() + " Longest");
            //To print words in order of descending length
-           Iterator<Token> wordsByLengthInDescendingOrder = new BST.InOrderIterator<>(wordsByLengthDescending);
-           i = 10; //Reset the variable
-           while ((i > 0) && wordsByLengthInDescendingOrder.hasNext()) {
-               --i;
-               Token t = wordsByLengthInDescendingOrder.next();
+           for (Token t : longestWords) {
                System.out.println(t.format());
            }
-       }
-       if (wordsByLengthDescending.size() == 0) {
+           System.out.println("\nThe longest word is " + longestWords.get(0));
+           System.out.println("The average word length is " + avgLength());
+       } else {
            System.out.println("\nThe longest word is: NONE [exceptional case].");
            System.out.println("The average word length is: NONE [exceptional case].");
-       } else {
-           Iterator<Token> longestIterator = new BST.InOrderIterator<>(wordsByLengthDescending);
-           Token longest = longestIterator.next();
-           System.out.println("\nThe longest word is " + longest);
-           System.out.println("The average word length is " + avgLength());
-       }
-
-       System.out.println("\nAll");
-       //To print words in natural order
-       Iterator<Token> wordsByNaturalOrderInOrder = new BST.InOrderIterator<>(wordsByNaturalOrder);
-       while (wordsByNaturalOrderInOrder.hasNext()) {
-           Token t = wordsByNaturalOrderInOrder.next();
-           System.out.println(t.format());
        }
+   }
 
+    /**
+     * Method to print the height of each tree, with the optimum for its size. A height of -1
+     * is printed as n/a, for a tree that was not built.
+     * @param frequencyHeight the height of the frequency tree, or -1
+     * @param lengthHeight the height of the length tree, or -1
+     */
+   private static void printHeights(int frequencyHeight, int lengthHeight)
+   {
        //To print each trees height
        System.out.println();
        System.out.println("Alphabetic Tree: (Optimum Height: " + 
              optHeight(wordsByNaturalOrder.size()) + ") (Actual Height: " 
-             + wordsByNaturalOrder.height() + ")");
+             + heightText(wordsByNaturalOrder.height()) + ")");
        System.out.println("Frequency Tree: (Optimum Height: " + 
-             optHeight(wordsByFrequencyDescending.size()) + ") (Actual Height: "
-             + wordsByFrequencyDescending.height() + ")");
+             optHeight(frequentWordCount) + ") (Actual Height: "
+             + heightText(frequencyHeight) + ")");
        System.out.println("Length Tree: (Optimum Height: " + 
-             optHeight(wordsByLengthDescending.size()) + ") (Actual Height: "
-             + wordsByLengthDescending.height() + ")");
+             optHeight(wordsByNaturalOrder.size()) + ") (Actual Height: "
+             + heightText(lengthHeight) + ")");
+   }
+
+    /**
+     * Method to format a measured height for printing
+     * @param height the height, or -1 if there is no tree to measure
+     * @return the height, or n/a
+     */
+   private static String heightText(int height)
+   {
+       return (height < 0) ? "n/a" : Integer.toString(height);
+   }
+
+    /**
+     * Method to read the first words of a tree in order
+     * @param tree the tree
+     * @param n the most words to read
+     * @return the first n words, or all of them if there are fewer
+     */
+   private static List<Token> first(BST<Token> tree, int n)
+   {
+       List<Token> words = new ArrayList<>(n);
+       Iterator<Token> iterator = new BST.InOrderIterator<>(tree);
+       while (words.size() < n && iterator.hasNext()) {
+           words.add(iterator.next());
+       }
+       return words;
    }
    
    /**
     * Method to read the file and add words to the list/tree.
+    * @param input the words of the file
     */
-   private static void readFile() {
-       while (standardInput.hasNext()) {
+   static void readFile(Tokenizer input) {
+       while (true) {
+           long tokenizeStart = (metrics == null) ? 0 : System.nanoTime();
+           if (!input.hasNext()) {
+               break;
+           }
            /*
-            Get the next word, convert to lower case, strip out blanks and non-alphabetic
-            characters.
+            Get the next word; the tokenizer has already converted it to lower case and
+            stripped out blanks and non-alphabetic characters, and never returns an empty one.
            */
-           String word = standardInput
-                   .next()
-                   .toLowerCase()
-                   .trim()
-                   .replaceAll("[^a-z]", "")
-                   ;
-
-           if (word.length() > 0) {
+           Token word = input.nextToken();
+           if (metrics != null) {
+               tokenizeNanos += System.nanoTime() - tokenizeStart;
+           }
+           totalWordCount++;
+
+           if (!countStopWord(word)) {
+               // Count the word; the index copies it if it is new.
+               wordsByNaturalOrder.add(word);
+           }
+       }
+   }
+
+   /**
+    * Method to load a word index saved by --save-index, with the totals saved along with it,
+    * instead of reading any input. The words are rebuilt into a perfectly balanced tree in
+    * O(n), so its height may be less than that of the tree they were first counted into.
+    * @param path the saved index
+    * @throws IOException if the file cannot be read or is not a saved index
+    */
+   static void loadIndex(Path path) throws IOException
+   {
+       IndexSnapshot snapshot = IndexSnapshot.open(path);
+       if (snapshot.getTotalWordCount() > Integer.MAX_VALUE) {
+           throw new IOException("Too many words to report on");
+       }
+       wordsByNaturalOrder = indexKind.equals("array") ? new ArrayWordIndex(snapshot) : new TreeWordIndex(snapshot);
+       totalWordCount = (int) snapshot.getTotalWordCount();
+       stopWordCount = snapshot.getStopWordCount();
+   }
+
+   /**
+    * Method to check whether the input is read as a stream, for rolling reports or a window
+    * @return true if readStream() is to be used
+    */
+   private static boolean streaming()
+   {
+       return reportEveryWords > 0 || reportEveryNanos > 0 || windowWords > 0 || windowNanos > 0;
+   }
+
+   /**
+    * Method to read an input that may never end, such as a log being tailed. The frequency and
+    * length trees are kept up to date as each word is counted, rather than built at the end:
+    * a word whose count changes is moved in the frequency tree by BST.reposition(). A rolling
+    * report is printed from the trees every so many words or seconds. Reports by time are
+    * printed by a timer thread, so they keep coming while the input is idle; the reading
+    * thread holds streamLock while it counts each word, and the timer while it reports.
+    * <p>
+    * With a window, only the words in the last so many words or seconds are counted: as each
+    * bucket of the window expires its occurrences are taken back, and words whose count falls
+    * to zero are deleted from the trees. The totals of words and stop words stay all-time.
+    * A window by time is moved along by each timed report, and once more at the end of the
+    * input, so the final report leaves out what expired after the last word.
+    * @param input the words of the input
+    */
+   static void readStream(Tokenizer input) {
+       TreeWordIndex index = (TreeWordIndex) wordsByNaturalOrder;
+       wordsByFrequencyDescending = new BST<>(Token.CompFreqDesc, BST.Mode.AVL);
+       wordsByLengthDescending = new BST<>(Token.CompLengthDesc, BST.Mode.AVL);
+       totalWordLength = 0;
+       liveTrees = true;
+       long startNanos = System.nanoTime();
+       SlidingWindow window = (windowWords > 0 || windowNanos > 0)
+               ? new SlidingWindow(Math.max(windowWords, windowNanos), WINDOW_BUCKETS, A3::expire) : null;
+       ScheduledExecutorService reporter = null;
+       if (reportEveryNanos > 0) {
+           reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+               Thread thread = new Thread(task, "rolling-report");
+               thread.setDaemon(true);
+               return thread;
+           });
+           reporter.scheduleAtFixedRate(() -> {
+               synchronized (streamLock) {
+                   printWindowReport(window, startNanos);
+               }
+           }, reportEveryNanos, reportEveryNanos, TimeUnit.NANOSECONDS);
+       }
+
+       while (input.hasNext()) {
+           Token word = input.nextToken();
+           synchronized (streamLock) {
                totalWordCount++;
-               /*
-                existingElement is either null or the same as maybeNewElement (in which
-                case, maybeNewElement is not a new element; ie, maybe resolves to "not").
-               */
-               Token maybeNewElement = new Token(word),
-                       existingElement = wordsByNaturalOrder.find(maybeNewElement);
-               if (existingElement == null) {
-                   wordsByNaturalOrder.add(maybeNewElement);
-               } else {
-                   existingElement.incrementCount();
+
+               if (!countStopWord(word)) {
+                   Token kept = index.add(word, existing -> {
+                       // Incrementing the count of a word in the frequency tree moves it there.
+                       if (!wordsByFrequencyDescending.reposition(existing, Token::incrementCount)) {
+                           existing.incrementCount();
+                       }
+                   });
+                   if (kept.getCount() == 1) {
+                       wordsByLengthDescending.add(kept);
+                       totalWordLength += kept.length();
+                   } else if (kept.getCount() == 3) {
+                       // A word joins the frequency tree once it occurs more than twice.
+                       wordsByFrequencyDescending.add(kept);
+                   }
+                   if (window != null) {
+                       window.record(kept, windowTick(startNanos));
+                   }
+               } else if (window != null) {
+                   // Stop words are not counted, but they still move a window of words along.
+                   window.advance(windowTick(startNanos));
                }
+
+               if (reportEveryWords > 0 && totalWordCount % reportEveryWords == 0) {
+                   printWindowReport(window, startNanos);
+               }
+           }
+       }
+
+       if (reporter != null) {
+           // Let a report being printed finish, so it cannot run into the final one.
+           reporter.shutdown();
+           try {
+               reporter.awaitTermination(1, TimeUnit.MINUTES);
+           } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+           }
+       }
+       if (window != null) {
+           synchronized (streamLock) {
+               window.advance(windowTick(startNanos));
            }
        }
    }
 
    /**
-    * Method to create the frequency and length lists.
+    * Method to move a window along to the present, if there is one, and print a rolling report
+    * @param window the window, or null
+    * @param startNanos when reading began
     */
-   private static void createFreqLists() {
-       Iterator<Token> iterator = new BST.InOrderIterator<>(wordsByNaturalOrder);
+   private static void printWindowReport(SlidingWindow window, long startNanos) {
+       if (window != null) {
+           window.advance(windowTick(startNanos));
+       }
+       printRollingReport();
+   }
+
+   /**
+    * Method to return the current position of the window: the words read, or the nanoseconds
+    * since reading began
+    * @param startNanos when reading began
+    * @return the tick
+    */
+   private static long windowTick(long startNanos) {
+       return (windowWords > 0) ? totalWordCount : System.nanoTime() - startNanos;
+   }
+
+   /**
+    * Method to take back occurrences of a word that have left the window, moving the word in
+    * the frequency tree, or deleting it from every tree when none are left
+    * @param word the word, as kept by the index
+    * @param occurrences the number of occurrences that expired
+    */
+   private static void expire(Token word, int occurrences) {
+       if (word.getCount() - occurrences > 2) {
+           // It stays in the frequency tree, lower down.
+           wordsByFrequencyDescending.reposition(word, w -> w.decrementCount(occurrences));
+           return;
+       }
+       if (word.getCount() > 2) {
+           wordsByFrequencyDescending.delete(word);
+       }
+       word.decrementCount(occurrences);
+
+       if (word.getCount() == 0) {
+           ((TreeWordIndex) wordsByNaturalOrder).remove(word);
+           wordsByLengthDescending.delete(word);
+           totalWordLength -= word.length();
+       }
+   }
+
+   /**
+    * Method to count a word as a stop word, if it is one. Stop words never reach the tree;
+    * each distinct one is counted once.
+    * @param word the word read
+    * @return true if the word is a stop word
+    */
+   private static boolean countStopWord(Token word) {
+       if (!stopWordSet.contains(word)) {
+           return false;
+       }
+       if (!stopWordsSeen.contains(word)) {
+           stopWordsSeen.add(arena.intern(word));
+           stopWordCount++;
+       }
+       return true;
+   }
+
+   /**
+    * Method to read the file on several threads, each counting the words of one chunk into its
+    * own tree, and then merge the counts into the list/tree. The words of each chunk are merged
+    * in the order they first occur, chunk by chunk, so the tree is built exactly as readFile()
+    * would build it. A concurrent index is instead fed by every thread at once, and there is
+    * nothing to merge.
+    * @throws IOException if the file cannot be read
+    */
+   private static void readFileParallel() throws IOException {
+       WordIndex sharedIndex = (wordsByNaturalOrder instanceof ConcurrentWordIndex) ? wordsByNaturalOrder : null;
+       List<ParallelIngest.ChunkCounts> chunks = (inputFile == null)
+               ? ParallelIngest.count(System.in, threads, stopWordSet, sharedIndex)
+               : ParallelIngest.count(inputFile, threads, stopWordSet, sharedIndex);
+
+       for (ParallelIngest.ChunkCounts chunk : chunks) {
+           totalWordCount += chunk.getTotalWordCount();
+           for (Token stopWord : chunk.getStopWordsSeen()) {
+               if (stopWordsSeen.add(stopWord)) {
+                   stopWordCount++;
+               }
+           }
+           for (Token token : chunk.getFirstSeen()) {
+               wordsByNaturalOrder.add(token, token.getCount());
+           }
+       }
+   }
+
+   /**
+    * Method to create the frequency and length lists. The most frequent and longest words are
+    * selected in the same single pass over the alphabetic tree. Unless only those are wanted,
+    * each view is also sorted once and built into a perfectly balanced tree, rather than added
+    * to a node at a time. An off-heap index sorts the views itself, off the heap, and the top
+    * words are read from those.
+    */
+   static void createFreqLists() {
+       mostFrequent = new TopK<>(TOP_COUNT, Token.CompFreqDesc);
+       longest = new TopK<>(TOP_COUNT, Token.CompLengthDesc);
+       if (liveTrees) {
+           // The trees and the total length are up to date already; only the top words are read.
+           frequentWordCount = wordsByFrequencyDescending.size();
+           first(wordsByFrequencyDescending, TOP_COUNT).forEach(mostFrequent::offer);
+           first(wordsByLengthDescending, TOP_COUNT).forEach(longest::offer);
+           return;
+       }
+       frequentWordCount = 0;
+       totalWordLength = 0;
+       OffHeapWordIndex offHeapViews = (buildSecondaryTrees && wordsByNaturalOrder instanceof OffHeapWordIndex)
+               ? (OffHeapWordIndex) wordsByNaturalOrder : null;
+       boolean heapViews = secondaryTreesOnHeap();
+       List<Token> byLength = heapViews ? new ArrayList<>(wordsByNaturalOrder.size()) : null;
+       List<Token> byFrequency = heapViews ? new ArrayList<>() : null;
+       Iterator<Token> iterator = wordsByNaturalOrder.iterator();
 
        // Iterate over the words in the tree
        while (iterator.hasNext()) {
            // Get the next token (word) from the iterator
            Token token = iterator.next();
+           totalWordLength += token.length();
 
-           // Add the word to the wordsByLength tree (ordered by length)
-           wordsByLengthDescending.add(token);
+           // Every word belongs to the length view
+           if (offHeapViews == null) {
+               longest.offer(token);
+           }
+           if (byLength != null) {
+               byLength.add(token);
+           }
 
            if (token.getCount() > 2) {
-               // If yes, add the word to the wordsByFreqDesc tree (ordered by frequency)
-               wordsByFrequencyDescending.add(token);
+               // If yes, the word belongs to the frequency view
+               frequentWordCount++;
+               if (offHeapViews == null) {
+                   mostFrequent.offer(token);
+               }
+               if (byFrequency != null) {
+                   byFrequency.add(token);
+               }
            }
        }
+
+       if (offHeapViews != null) {
+           offHeapViews.sortViews();
+           offerFirst(longest, offHeapViews.byLength(), wordsByNaturalOrder.size());
+           offerFirst(mostFrequent, offHeapViews.byFrequency(), frequentWordCount);
+       }
+       if (heapViews) {
+           byLength.sort(Token.CompLengthDesc);
+           wordsByLengthDescending = BST.fromSorted(byLength, Token.CompLengthDesc, BST.Mode.AVL);
+           byFrequency.sort(Token.CompFreqDesc);
+           wordsByFrequencyDescending = BST.fromSorted(byFrequency, Token.CompFreqDesc, BST.Mode.AVL);
+       }
+   }
+
+   /**
+    * Method to offer the first words of a sorted view to a selection, which then holds the
+    * words that begin the view
+    * @param selection the selection to fill
+    * @param view the words, in the selection's order
+    * @param viewSize the number of words at the start of the view that may be selected
+    */
+   private static void offerFirst(TopK<Token> selection, Iterator<Token> view, int viewSize)
+   {
+       for (int i = 0; i < Math.min(TOP_COUNT, viewSize); i++) {
+           selection.offer(view.next());
+       }
    }
 
    /**
@@ -196,39 +1008,33 @@ public class A3
     */
     private static int avgLength()
     {
-        int totalLength = 0;
-        int wordCount = 0;
-        Iterator<Token> iterator = new BST.InOrderIterator<>(wordsByNaturalOrder);
-
-        // Iterate over the words in the tree
-        while (iterator.hasNext()) {
-            Token token = iterator.next();
-            totalLength += token.toString().length();
-            wordCount++;
-        }
+        int wordCount = wordsByNaturalOrder.size();
 
         // Calculate and return the average length
         // If there are words in the tree, compute the average; otherwise, return 0 to avoid division by zero
-        return (wordCount > 0) ? totalLength / wordCount : 0;
+        return (wordCount > 0) ? (int) (totalWordLength / wordCount) : 0;
     }
 
+   /**
+    * Method to check whether the full frequency and length trees are built on the heap, which
+    * they are unless only the top words are wanted or the words are kept off the heap (when
+    * streaming they always are, as they were kept up to date while reading)
+    * @return true if the trees are built
+    */
+   private static boolean secondaryTreesOnHeap()
+   {
+       return liveTrees || (buildSecondaryTrees && !(wordsByNaturalOrder instanceof OffHeapWordIndex));
+   }
 
-    /**
-     * Method to check and remove the array of stop words from the BST if present.
-     */
-   private static void removeStop()
+   /**
+    * Method to return the height of the frequency or length tree, if it was built
+    * @param tree the tree
+    * @return the height of the tree, or -1 if it was not built, as with --top-only or
+    *         the off-heap index
+    */
+   private static int secondaryTreeHeight(BST<Token> tree)
    {
-       BST.LevelOrderIterator<Token> iterator = new BST.LevelOrderIterator<>(wordsByNaturalOrder);
-       while (iterator.hasNext()) {
-           Token currentElement = iterator.next();
-           for (String word : stopwords) {
-               Token stopWord = new Token(word);
-               if (currentElement.equals(stopWord)) {
-                   wordsByNaturalOrder.delete(currentElement);
-                   stopWordCount++;
-               }
-           }
-       }
+       return secondaryTreesOnHeap() ? tree.height() : -1;
    }
 
    /** Method to calculate the optimal height for a tree of size n.
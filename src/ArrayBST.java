@@ -0,0 +1,700 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A binary search tree with the same operations as BST, and its PLAIN and AVL modes, but with
+ * no node objects:
+ * node i is slot i of parallel arrays holding its element, its children (as slot numbers),
+ * the height of its subtree and a count. A node costs 16 bytes of ints plus one reference,
+ * instead of an object with a header, a reference to its tree and three more references, and
+ * a walk down the tree reads a few compact arrays instead of chasing pointers across the heap.
+ * <p>
+ * The count kept with each element lets the tree count occurrences, as of words, without the
+ * elements having to count themselves. Slots freed by delete are kept on a free list and
+ * reused by later adds.
+ * @param <T> the type of the elements
+ */
+public class ArrayBST<T extends Comparable<T>> {
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The nodes, by slot; a free slot is chained to the next through left.
+    private int[] left = new int[INITIAL_CAPACITY];
+    private int[] right = new int[INITIAL_CAPACITY];
+    private int[] height = new int[INITIAL_CAPACITY];
+    private int[] count = new int[INITIAL_CAPACITY];
+    private Object[] data = new Object[INITIAL_CAPACITY];
+    // The number of slots ever used, and the first free slot below that.
+    private int slotsUsed = 0;
+    private int freeList = NONE;
+
+    private int root = NONE;
+    private int size = 0;
+    private final Comparator<T> cmp;
+    private final BST.Mode mode;
+    // Counts structural modifications, so that iterators can fail fast.
+    private int modCount = 0;
+    // The slots passed on the way down by the last add or delete, deepest last.
+    private int[] path = new int[INITIAL_CAPACITY];
+
+    /**
+     * Constructor for an ArrayBST that contains a comparator for ordering
+     * @param comparator the desired comparator used
+     * @param mode whether the tree balances itself
+     * @throws IllegalArgumentException if mode is SPLAY, which ArrayBST does not support
+     */
+    public ArrayBST(Comparator<T> comparator, BST.Mode mode) {
+        if (mode == BST.Mode.SPLAY) {
+            throw new IllegalArgumentException("ArrayBST does not support SPLAY mode.");
+        }
+        cmp = comparator;
+        this.mode = mode;
+    }
+    public ArrayBST(Comparator<T> comparator) {
+        this(comparator, BST.Mode.PLAIN);
+    }
+    public ArrayBST(BST.Mode mode) {
+        this(Comparator.naturalOrder(), mode);
+    }
+    public ArrayBST() {
+        this(Comparator.naturalOrder(), BST.Mode.PLAIN);
+    }
+
+    /**
+     * Method to build a perfectly balanced tree from elements that are already in order, in
+     * O(n) time and without comparing any of them, each with a count of 1. The elements must
+     * be distinct and sorted by the comparator, which is the caller's responsibility.
+     * @param sorted the elements, in ascending order according to comparator
+     * @param comparator the comparator that orders the tree
+     * @param mode the shape-maintenance strategy for later adds and deletes
+     * @param <T> the type of the elements
+     * @return a tree of height ceil(log2(n + 1)) holding the elements
+     */
+    public static <T extends Comparable<T>> ArrayBST<T> fromSorted(List<T> sorted, Comparator<T> comparator,
+                                                                  BST.Mode mode) {
+        return fromSorted(sorted.iterator(), sorted.size(), element -> 1, comparator, mode);
+    }
+
+    /**
+     * Method to build a perfectly balanced tree from elements that are already in order, in
+     * O(n) time and without comparing any of them. The elements must be distinct and sorted
+     * by the comparator, which is the caller's responsibility.
+     * @param sorted yields the elements in ascending order according to comparator
+     * @param size the number of elements to take from sorted
+     * @param countOf gives the count to keep with each element
+     * @param comparator the comparator that orders the tree
+     * @param mode the shape-maintenance strategy for later adds and deletes
+     * @param <T> the type of the elements
+     * @return a tree of height ceil(log2(n + 1)) holding the elements
+     */
+    public static <T extends Comparable<T>> ArrayBST<T> fromSorted(Iterator<T> sorted, int size,
+                                                                  ToIntFunction<? super T> countOf,
+                                                                  Comparator<T> comparator, BST.Mode mode) {
+        ArrayBST<T> tree = new ArrayBST<>(comparator, mode);
+        tree.ensureCapacity(size);
+        tree.root = tree.buildBalanced(sorted, size, countOf);
+        tree.size = size;
+        return tree;
+    }
+
+    /**
+     * Method to build a balanced subtree from the next n elements, in order, into slots taken
+     * from the end of the arrays. The recursion is only as deep as the subtree is tall, which
+     * is logarithmic in n.
+     * @param sorted yields the elements in order
+     * @param n the number of elements in the subtree
+     * @param countOf gives the count to keep with each element
+     * @return the slot of the root of the subtree, or NONE when n is zero
+     */
+    private int buildBalanced(Iterator<T> sorted, int n, ToIntFunction<? super T> countOf) {
+        if (n == 0) {
+            return NONE;
+        }
+        // The left subtree takes the larger half, so every level but the last is full.
+        int leftChild = buildBalanced(sorted, n / 2, countOf);
+        T element = sorted.next();
+        int subtreeRoot = allocate(element, countOf.applyAsInt(element));
+        left[subtreeRoot] = leftChild;
+        right[subtreeRoot] = buildBalanced(sorted, n - n / 2 - 1, countOf);
+        updateHeight(subtreeRoot);
+        return subtreeRoot;
+    }
+
+    /**
+     * Public method to add an element to the tree, with a count of 1
+     * @param element the element being added
+     * @throws RuntimeException if an equal element is already in the tree
+     */
+    public void add(T element) throws RuntimeException {
+        upsert(element, Function.identity(), existing -> {
+            throw new RuntimeException("Existing element attempting to be added to tree.");
+        }, 1);
+    }
+
+    /**
+     * Method to return the element equal to key, adding the result of mappingFunction, with a
+     * count of 1, when there is none. Only one descent of the tree is made either way.
+     * @param key the element to look for
+     * @param mappingFunction produces the element to add from key when key is absent
+     * @return the element in the tree equal to key after the call
+     */
+    public T computeIfAbsent(T key, Function<? super T, ? extends T> mappingFunction) {
+        return element(upsert(key, mappingFunction, null, 1));
+    }
+
+    /**
+     * Method to add value to the tree, or, if an equal element is already present, to
+     * hand that element to remappingFunction instead. Only one descent of the tree is made
+     * either way.
+     * @param value the element to add when absent
+     * @param remappingFunction applied to the existing element when value is present
+     * @return the element in the tree equal to value after the call
+     */
+    public T merge(T value, Consumer<? super T> remappingFunction) {
+        return element(upsert(value, Function.identity(), remappingFunction, 1));
+    }
+
+    /**
+     * Method to hand the element equal to key to ifPresent, or, if there is none, to add the
+     * result of ifAbsent instead, so that key can be a temporary object that is only copied
+     * when it has to be kept. Only one descent of the tree is made either way.
+     * @param key the element to look for
+     * @param ifAbsent produces the element to add from key when key is absent
+     * @param ifPresent applied to the existing element when key is present
+     * @return the element in the tree equal to key after the call
+     */
+    public T merge(T key, Function<? super T, ? extends T> ifAbsent, Consumer<? super T> ifPresent) {
+        return element(upsert(key, ifAbsent, ifPresent, 1));
+    }
+
+    /**
+     * Method to add to the count of the element equal to key, or, if there is none, to add
+     * the result of ifAbsent with that count. Only one descent of the tree is made either way.
+     * @param key the element to look for
+     * @param ifAbsent produces the element to add from key when key is absent
+     * @param occurrences the amount to add to the count
+     * @return the count of the element after the call
+     */
+    public int addCount(T key, Function<? super T, ? extends T> ifAbsent, int occurrences) {
+        int slot = upsert(key, ifAbsent, null, 0);
+        count[slot] += occurrences;
+        return count[slot];
+    }
+
+    /**
+     * Method to return the count kept with an element
+     * @param key the element to look for
+     * @return its count, or 0 if it is not in the tree
+     */
+    public int getCount(T key) {
+        int n = slotOf(key);
+        return (n == NONE) ? 0 : count[n];
+    }
+
+    /**
+     * Private method to find or insert an element in a single iterative descent, remembering
+     * the slots passed on the way down so the tree can be rebalanced on the way back up
+     * without recursion.
+     * @param key the element to look for
+     * @param ifAbsent produces the element to add when key is absent
+     * @param ifPresent applied to the existing element when key is present; may be null
+     * @param initialCount the count of an element that is added
+     * @return the slot of the element equal to key after the call
+     */
+    private int upsert(T key, Function<? super T, ? extends T> ifAbsent, Consumer<? super T> ifPresent,
+                       int initialCount) {
+        int depth = 0;
+        int comparison = 0;
+
+        for (int n = root; n != NONE; n = (comparison < 0) ? left[n] : right[n]) {
+            comparison = cmp.compare(key, element(n));
+            if (comparison == 0) {
+                if (ifPresent != null) {
+                    ifPresent.accept(element(n));
+                }
+                return n;
+            }
+            depth = push(depth, n);
+        }
+
+        int n = allocate(ifAbsent.apply(key), initialCount);
+        if (depth == 0) {
+            root = n;
+        } else if (comparison < 0) {
+            left[path[depth - 1]] = n;
+        } else {
+            right[path[depth - 1]] = n;
+        }
+        size++;
+        modCount++;
+
+        rebalance(depth);
+        return n;
+    }
+
+    /**
+     * Method to delete an element from the tree
+     * @param targetElement the element to delete
+     */
+    public void delete(T targetElement) {
+        int depth = 0;
+        int target = root;
+
+        while (target != NONE) {
+            int comparison = cmp.compare(targetElement, element(target));
+            if (comparison == 0) {
+                break;
+            }
+            depth = push(depth, target);
+            target = (comparison < 0) ? left[target] : right[target];
+        }
+
+        // The element is not in the tree; nothing to do.
+        if (target == NONE) {
+            return;
+        }
+
+        int parent = (depth > 0) ? path[depth - 1] : NONE;
+        int freed = target;
+        if (left[target] == NONE) {
+            replaceChild(parent, target, right[target]);
+        } else if (right[target] == NONE) {
+            replaceChild(parent, target, left[target]);
+        } else {
+            // Node with two children: move the inorder successor (smallest in the right
+            // subtree) into it, remembering the path down to the successor.
+            depth = push(depth, target);
+            int successor = right[target];
+            while (left[successor] != NONE) {
+                depth = push(depth, successor);
+                successor = left[successor];
+            }
+            data[target] = data[successor];
+            count[target] = count[successor];
+
+            // Unlink the successor, which has no left child.
+            replaceChild(path[depth - 1], successor, right[successor]);
+            freed = successor;
+        }
+        free(freed);
+        size--;
+        modCount++;
+        rebalance(depth);
+    }
+
+    /**
+     * Method to find an element in the tree
+     * @param t the element to look for
+     * @return the element in the tree equal to t, or null if there is none
+     */
+    public T find(T t) {
+        int n = slotOf(t);
+        return (n == NONE) ? null : element(n);
+    }
+
+    /**
+     * Method to return size of the tree
+     * @return size of tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to return height of the tree, which is kept up to date by add and delete
+     * @return height of tree
+     */
+    public int height() {
+        return heightOf(root);
+    }
+
+    /**
+     * Method to measure the shape of the tree in one iterative, level-by-level pass
+     * @return the height, depths, leaves and imbalance of the tree
+     */
+    public BST.Stats stats() {
+        List<Integer> nodesPerDepth = new ArrayList<>();
+        long depthTotal = 0;
+        int leaves = 0;
+        IntQueue level = new IntQueue();
+        if (root != NONE) {
+            level.add(root);
+        }
+
+        while (!level.isEmpty()) {
+            int depth = nodesPerDepth.size();
+            int width = level.size();
+            nodesPerDepth.add(width);
+            depthTotal += (long) depth * width;
+
+            // Replace the current level with the next one.
+            for (int remaining = width; remaining > 0; remaining--) {
+                int n = level.remove();
+                if (left[n] == NONE && right[n] == NONE) {
+                    leaves++;
+                }
+                if (left[n] != NONE) {
+                    level.add(left[n]);
+                }
+                if (right[n] != NONE) {
+                    level.add(right[n]);
+                }
+            }
+        }
+        return new BST.Stats(nodesPerDepth, depthTotal, leaves);
+    }
+
+    /**
+     * Method to return the slot holding an element
+     * @param t the element to look for
+     * @return the slot, or NONE if the element is not in the tree
+     */
+    private int slotOf(T t) {
+        int n = root;
+        while (n != NONE) {
+            int comparison = cmp.compare(t, element(n));
+            if (comparison == 0) {
+                break;
+            }
+            n = (comparison < 0) ? left[n] : right[n];
+        }
+        return n;
+    }
+
+    /**
+     * Method to bring the height of every slot on the path up to date, deepest first,
+     * rebalancing each one in AVL mode, and stopping once a subtree keeps its height
+     * @param depth the number of slots on the path
+     */
+    private void rebalance(int depth) {
+        while (depth > 0) {
+            int n = path[--depth];
+            int previousHeight = height[n];
+            int balanced = balance(n);
+            if (balanced != n) {
+                replaceChild((depth > 0) ? path[depth - 1] : NONE, n, balanced);
+            } else if (height[n] == previousHeight) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to update the height of a node and, in AVL mode, restore the AVL property at it
+     * @param n the root of the subtree to rebalance
+     * @return the root of the rebalanced subtree
+     */
+    private int balance(int n) {
+        updateHeight(n);
+        if (mode != BST.Mode.AVL) {
+            return n;
+        }
+        int skew = balanceFactor(n);
+
+        if (skew > 1) {
+            // Left-heavy; a right-leaning left child needs a left-right double rotation.
+            if (balanceFactor(left[n]) < 0) {
+                left[n] = rotateLeft(left[n]);
+            }
+            return rotateRight(n);
+        } else if (skew < -1) {
+            // Right-heavy; a left-leaning right child needs a right-left double rotation.
+            if (balanceFactor(right[n]) > 0) {
+                right[n] = rotateRight(right[n]);
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    /**
+     * Method to rotate a subtree to the right, lifting its left child
+     * @param n the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int rotateRight(int n) {
+        int pivot = left[n];
+        left[n] = right[pivot];
+        right[pivot] = n;
+        updateHeight(n);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    /**
+     * Method to rotate a subtree to the left, lifting its right child
+     * @param n the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int rotateLeft(int n) {
+        int pivot = right[n];
+        right[n] = left[pivot];
+        left[pivot] = n;
+        updateHeight(n);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    /**
+     * Method to point a parent, or the root, at a new child in place of an old one
+     * @param parent the parent slot, or NONE for the root
+     * @param oldChild the child being replaced
+     * @param newChild the child taking its place
+     */
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NONE) {
+            root = newChild;
+        } else if (left[parent] == oldChild) {
+            left[parent] = newChild;
+        } else {
+            right[parent] = newChild;
+        }
+    }
+
+    private int heightOf(int n) {
+        return (n == NONE) ? 0 : height[n];
+    }
+
+    private void updateHeight(int n) {
+        height[n] = 1 + Math.max(heightOf(left[n]), heightOf(right[n]));
+    }
+
+    private int balanceFactor(int n) {
+        return heightOf(left[n]) - heightOf(right[n]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T element(int n) {
+        return (T) data[n];
+    }
+
+    /**
+     * Method to push a slot onto the path, growing it if need be
+     * @param depth the number of slots on the path
+     * @param n the slot to push
+     * @return the new number of slots on the path
+     */
+    private int push(int depth, int n) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, 2 * path.length);
+        }
+        path[depth] = n;
+        return depth + 1;
+    }
+
+    /**
+     * Method to take a slot for a new leaf, from the free list or else from the end of the
+     * arrays, which grow by half when full
+     * @param element the element of the leaf
+     * @param initialCount the count of the leaf
+     * @return the slot
+     */
+    private int allocate(T element, int initialCount) {
+        int n;
+        if (freeList != NONE) {
+            n = freeList;
+            freeList = left[n];
+        } else {
+            if (slotsUsed == data.length) {
+                ensureCapacity(data.length + (data.length >> 1));
+            }
+            n = slotsUsed++;
+        }
+        data[n] = element;
+        count[n] = initialCount;
+        left[n] = NONE;
+        right[n] = NONE;
+        height[n] = 1;
+        return n;
+    }
+
+    /**
+     * Method to grow the arrays to hold at least a number of slots
+     * @param capacity the number of slots
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
+            count = Arrays.copyOf(count, capacity);
+            data = Arrays.copyOf(data, capacity);
+        }
+    }
+
+    /**
+     * Method to put a slot on the free list, letting go of its element
+     * @param n the slot
+     */
+    private void free(int n) {
+        data[n] = null;
+        left[n] = freeList;
+        freeList = n;
+    }
+
+    /**
+     * Method used by the iterators to fail fast when the tree they walk has been
+     * structurally modified since they were created
+     * @param tree the tree being iterated
+     * @param expectedModCount the modification count of the tree when the iterator was created
+     * @throws ConcurrentModificationException if the tree has since been modified
+     */
+    private static void checkForComodification(ArrayBST<?> tree, int expectedModCount) {
+        if (tree.modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Static class to iterate over a tree in order. Only the stack of slots whose right
+     * subtrees are still unvisited is kept, so reading the first k elements costs
+     * O(height + k).
+     * @param <T> The type the iterator yields, which is the same type as the tree the iterator is initialized with.
+     */
+    static class InOrderIterator<T extends Comparable<T>> implements Iterator<T> {
+        private final ArrayBST<T> tree;
+        private final int expectedModCount;
+        private int[] stack;
+        private int depth = 0;
+        private int last = NONE;
+
+        public InOrderIterator(ArrayBST<T> tree) throws IllegalArgumentException {
+            if (tree == null) {
+                throw new IllegalArgumentException("tree parameter cannot be null.");
+            }
+            this.tree = tree;
+            this.expectedModCount = tree.modCount;
+            this.stack = new int[Math.max(1, tree.height())];
+            pushLeftSpine(tree.root);
+        }
+
+        /**
+         * Method to push a slot and all of its left descendants onto the stack
+         * @param n the first slot to push, which may be NONE
+         */
+        private void pushLeftSpine(int n) {
+            for (; n != NONE; n = tree.left[n]) {
+                stack[depth++] = n;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            checkForComodification(tree, expectedModCount);
+            return depth > 0;
+        }
+
+        @Override
+        public T next() {
+            checkForComodification(tree, expectedModCount);
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            last = stack[--depth];
+            pushLeftSpine(tree.right[last]);
+            return tree.element(last);
+        }
+
+        /**
+         * Method to return the count kept with the element last returned by next()
+         * @return the count
+         * @throws IllegalStateException if next() has not been called
+         */
+        public int count() {
+            if (last == NONE) {
+                throw new IllegalStateException();
+            }
+            return tree.count[last];
+        }
+    }
+
+    /**
+     * Static class to iterate over a tree level by level. The slots waiting to be visited
+     * are queued in a ring buffer, which only grows as wide as the frontier does: about two
+     * levels of the tree, rather than all of it.
+     * @param <T> The type the iterator yields, which is the same type as the tree the iterator is initialized with.
+     */
+    static class LevelOrderIterator<T extends Comparable<T>> implements Iterator<T> {
+        private final ArrayBST<T> tree;
+        private final int expectedModCount;
+        private final IntQueue frontier = new IntQueue();
+
+        public LevelOrderIterator(ArrayBST<T> tree) {
+            this.tree = tree;
+            this.expectedModCount = tree.modCount;
+            if (tree.root != NONE) {
+                frontier.add(tree.root);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            checkForComodification(tree, expectedModCount);
+            return !frontier.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            checkForComodification(tree, expectedModCount);
+            if (frontier.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int n = frontier.remove();
+            if (tree.left[n] != NONE) {
+                frontier.add(tree.left[n]);
+            }
+            if (tree.right[n] != NONE) {
+                frontier.add(tree.right[n]);
+            }
+            return tree.element(n);
+        }
+    }
+
+    /**
+     * A first-in, first-out queue of slots in a ring buffer that doubles when full, so slots
+     * are queued without boxing them.
+     */
+    private static class IntQueue {
+        // A power of two long, so positions wrap around with a mask.
+        private int[] slots = new int[INITIAL_CAPACITY];
+        private int head = 0;
+        private int size = 0;
+
+        private void add(int n) {
+            if (size == slots.length) {
+                // Unroll the ring into the front of a buffer twice as big.
+                int[] grown = new int[2 * slots.length];
+                int firstPart = slots.length - head;
+                System.arraycopy(slots, head, grown, 0, firstPart);
+                System.arraycopy(slots, 0, grown, firstPart, head);
+                slots = grown;
+                head = 0;
+            }
+            slots[(head + size) & (slots.length - 1)] = n;
+            size++;
+        }
+
+        private int remove() {
+            int n = slots[head];
+            head = (head + 1) & (slots.length - 1);
+            size--;
+            return n;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * A word index kept in an AVL ArrayBST, with the counts in the tree's count array rather than
+ * in the Tokens, and the text of the words packed into a WordArena.
+ */
+public class ArrayWordIndex implements WordIndex {
+    private final ArrayBST<Token> tree;
+    private final WordArena arena = new WordArena();
+
+    /**
+     * Constructor for an empty index
+     */
+    public ArrayWordIndex() {
+        this.tree = new ArrayBST<>(BST.Mode.AVL);
+    }
+
+    /**
+     * Constructor for an index of the words of a snapshot, in a perfectly balanced tree built
+     * in O(n) without comparing any words
+     * @param snapshot the saved words, which are copied onto the heap
+     */
+    public ArrayWordIndex(IndexSnapshot snapshot) {
+        Iterator<Token> saved = snapshot.iterator();
+        Iterator<Token> kept = new Iterator<Token>() {
+            @Override
+            public boolean hasNext() {
+                return saved.hasNext();
+            }
+
+            @Override
+            public Token next() {
+                Token word = saved.next();
+                Token copy = arena.intern(word);
+                copy.addCount(word.getCount() - 1);
+                return copy;
+            }
+        };
+        this.tree = ArrayBST.fromSorted(kept, snapshot.size(), Token::getCount, Comparator.naturalOrder(),
+                BST.Mode.AVL);
+    }
+
+    @Override
+    public void add(Token word) {
+        tree.addCount(word, arena::intern, 1);
+    }
+
+    @Override
+    public void add(Token word, int occurrences) {
+        tree.addCount(word, arena::intern, occurrences);
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public int height() {
+        return tree.height();
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        ArrayBST.InOrderIterator<Token> words = new ArrayBST.InOrderIterator<>(tree);
+        return new Iterator<Token>() {
+            @Override
+            public boolean hasNext() {
+                return words.hasNext();
+            }
+
+            @Override
+            public Token next() {
+                // The tokens are only ever seen here, so their counts are brought up to date here.
+                Token word = words.next();
+                word.addCount(words.count() - word.getCount());
+                return word;
+            }
+        };
+    }
+
+    /**
+     * Method to return the tree the words are kept in, to describe its shape
+     * @return the tree, which must not be changed
+     */
+    public ArrayBST<Token> getTree() {
+        return tree;
+    }
+}
@@ -1,4 +1,6 @@
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author Bryce, Koddy, Nandan
@@ -9,71 +11,229 @@ import java.util.*;
  * order, or the tree will be degenerate. Hopefully the elements will be
  * received out of order, and the tree will be constructed appropriately,
  * though naively.
+ * <p>
+ * When constructed with {@link Mode#AVL} the tree instead rebalances itself
+ * after every add and delete, so its height stays within 1.44 log2(n) no matter
+ * the order elements arrive in.
+ * <p>
+ * When constructed with {@link Mode#SPLAY} the tree does not balance itself, but splays
+ * each element it adds, merges or finds to the root. find() therefore restructures the
+ * tree in this mode, and even a search must not run alongside any other use of it.
+ * <p>
+ * In all three modes the tree keeps its size, and every node the height and size of its
+ * subtree, up to date, so size() and height() are O(1), and select() and rank() find an
+ * element by its position in O(height).
  */
 public class BST<T extends Comparable<T>> {
+    /**
+     * The shape-maintenance strategy of a tree, chosen when the tree is constructed.
+     */
+    public enum Mode {
+        /** Trivial, non-balancing insertion and deletion. */
+        PLAIN,
+        /** Height-balanced (AVL) insertion and deletion. */
+        AVL,
+        /**
+         * Self-adjusting: every element added, found or merged is splayed to the root, so
+         * frequently used elements stay near the top. No one operation is bounded by log n,
+         * but any sequence of m operations costs O(m log n), and less when a few elements
+         * take most of the accesses.
+         */
+        SPLAY
+    }
+
     // DONE: revert to private after using TreePrinter to test.
     // public BSTNode root = null;
     private BSTNode root = null;
     private int size = 0;
     private final Comparator<T> cmp;
-    private final Stack<BSTNode> path = new Stack<>();
+    private final Mode mode;
+    // The nodes passed on the way down by the current add, delete, reposition or splay,
+    // deepest on top. Reused by every call, so a descent allocates nothing once it has grown
+    // to the height of the tree.
+    private final Deque<BSTNode> path = new ArrayDeque<>();
+    // Counts structural modifications, so that iterators can fail fast.
+    private int modCount = 0;
 
     /**
      * Constructor for a BST that contains a comparator for ordering
      * @param comparator the desired comparator used
+     * @param mode whether the tree balances itself
      */
-    public BST(Comparator<T> comparator) {
+    public BST(Comparator<T> comparator, Mode mode) {
         cmp = comparator;
+        this.mode = mode;
+    }
+    public BST(Comparator<T> comparator) {
+        this(comparator, Mode.PLAIN);
+    }
+    public BST(Mode mode) {
+        this(Comparator.naturalOrder(), mode);
     }
     public BST() {
-        cmp = Comparator.naturalOrder();
+        this(Comparator.naturalOrder(), Mode.PLAIN);
+    }
+
+    /**
+     * Method to build a perfectly balanced tree from elements that are already in order, in
+     * O(n) time and without comparing any of them. The elements must be distinct and sorted
+     * by the comparator, which is the caller's responsibility.
+     * @param sorted the elements, in ascending order according to comparator
+     * @param comparator the comparator that orders the tree
+     * @param mode the shape-maintenance strategy for later adds and deletes
+     * @param <T> the type of the elements
+     * @return a tree of height ceil(log2(n + 1)) holding the elements
+     */
+    public static <T extends Comparable<T>> BST<T> fromSorted(List<T> sorted, Comparator<T> comparator, Mode mode) {
+        return fromSorted(sorted.iterator(), sorted.size(), comparator, mode);
+    }
+
+    /**
+     * Method to build a perfectly balanced tree from elements that are already in order, in
+     * O(n) time and without comparing any of them. The elements must be distinct and sorted
+     * by the comparator, which is the caller's responsibility.
+     * @param sorted yields the elements in ascending order according to comparator
+     * @param size the number of elements to take from sorted
+     * @param comparator the comparator that orders the tree
+     * @param mode the shape-maintenance strategy for later adds and deletes
+     * @param <T> the type of the elements
+     * @return a tree of height ceil(log2(n + 1)) holding the elements
+     */
+    public static <T extends Comparable<T>> BST<T> fromSorted(Iterator<T> sorted, int size, Comparator<T> comparator, Mode mode) {
+        BST<T> tree = new BST<>(comparator, mode);
+        tree.root = tree.buildBalanced(sorted, size);
+        tree.size = size;
+        return tree;
+    }
+
+    /**
+     * Method to return the height of the tree fromSorted builds from n elements
+     * @param n the number of elements
+     * @return ceil(log2(n + 1))
+     */
+    public static int balancedHeight(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /**
+     * Method to build a balanced subtree from the next n elements, in order. The recursion is
+     * only as deep as the subtree is tall, which is logarithmic in n.
+     * @param sorted yields the elements in order
+     * @param n the number of elements in the subtree
+     * @return the root of the subtree, or null when n is zero
+     */
+    private BSTNode buildBalanced(Iterator<T> sorted, int n) {
+        if (n == 0) {
+            return null;
+        }
+        // The left subtree takes the larger half, so every level but the last is full.
+        BSTNode left = buildBalanced(sorted, n / 2);
+        BSTNode subtreeRoot = new BSTNode(sorted.next());
+        subtreeRoot.setLeft(left);
+        subtreeRoot.setRight(buildBalanced(sorted, n - n / 2 - 1));
+        subtreeRoot.update();
+        return subtreeRoot;
     }
 
     /**
      * Public method to add a node to the tree
      * @param data the data of the node being added
+     * @throws RuntimeException if an equal element is already in the tree
      */
-    public void add(T data) {
-        BSTNode n = new BSTNode(data);
+    public void add(T data) throws RuntimeException {
+        upsert(data, Function.identity(), existing -> {
+            throw new RuntimeException("Existing element attempting to be added to tree.");
+        });
+    }
 
-        // If the tree is empty, make the node the root of the tree.
-        if (root == null) {
-            root = n;
-        } else {
-            add(root, n);
-        }
+    /**
+     * Method to return the element equal to key, adding the result of mappingFunction
+     * when there is none. Only one descent of the tree is made either way.
+     * @param key the element to look for
+     * @param mappingFunction produces the element to add from key when key is absent
+     * @return the element in the tree equal to key after the call
+     */
+    public T computeIfAbsent(T key, Function<? super T, ? extends T> mappingFunction) {
+        return upsert(key, mappingFunction, null);
+    }
 
-        // Increment the size of the tree in this basal method so that it is
-        // not forgotten or done incorrectly the recursive method [add(BSTNode, BSTNode)].  
-        size++;
+    /**
+     * Method to add value to the tree, or, if an equal element is already present, to
+     * hand that element to remappingFunction instead (e.g. to increment a count). Only one
+     * descent of the tree is made either way.
+     * @param value the element to add when absent
+     * @param remappingFunction applied to the existing element when value is present
+     * @return the element in the tree equal to value after the call
+     */
+    public T merge(T value, Consumer<? super T> remappingFunction) {
+        return upsert(value, Function.identity(), remappingFunction);
     }
 
     /**
-     * Private method to add nodes at a given root recursively
-     * @param root location of where node should be added
-     * @param nodeToAdd the node being added
+     * Method to hand the element equal to key to ifPresent, or, if there is none, to add the
+     * result of ifAbsent instead. This lets key be a temporary object, such as a view of a
+     * reused buffer, that is only copied when it has to be kept. Only one descent of the tree
+     * is made either way.
+     * @param key the element to look for
+     * @param ifAbsent produces the element to add from key when key is absent
+     * @param ifPresent applied to the existing element when key is present
+     * @return the element in the tree equal to key after the call
      */
-    private void add(BSTNode root, BSTNode nodeToAdd) throws RuntimeException {
-        int comparison = cmp.compare(nodeToAdd.getData(), root.getData());
+    public T merge(T key, Function<? super T, ? extends T> ifAbsent, Consumer<? super T> ifPresent) {
+        return upsert(key, ifAbsent, ifPresent);
+    }
 
-        if (comparison < 0) {
-            if (root.getLeft() == null) {
-                root.setLeft(nodeToAdd);
-            }
-            else {
-                add(root.getLeft(), nodeToAdd);
+    /**
+     * Private method to find or insert an element in a single iterative descent. The nodes
+     * passed on the way down are remembered so the tree can be rebalanced on the way back
+     * up without recursion, which keeps deep (degenerate) trees from overflowing the
+     * thread stack. They are kept in the tree's reusable path, so neither callback may
+     * change this tree.
+     * @param key the element to look for
+     * @param ifAbsent produces the element to add when key is absent
+     * @param ifPresent applied to the existing element when key is present; may be null
+     * @return the element in the tree equal to key after the call
+     */
+    private T upsert(T key, Function<? super T, ? extends T> ifAbsent, Consumer<? super T> ifPresent) {
+        Deque<BSTNode> ancestors = emptyPath();
+        BSTNode current = root;
+        int comparison = 0;
+
+        while (current != null) {
+            comparison = cmp.compare(key, current.getData());
+            if (comparison == 0) {
+                if (ifPresent != null) {
+                    ifPresent.accept(current.getData());
+                }
+                if (mode == Mode.SPLAY) {
+                    splay(current, ancestors);
+                }
+                return current.getData();
             }
+            ancestors.push(current);
+            current = (comparison < 0) ? current.getLeft() : current.getRight();
         }
-        else if (comparison > 0) {
-            if (root.getRight() == null) {
-                root.setRight(nodeToAdd);
-            }
-            else {
-                add(root.getRight(), nodeToAdd);
-            }
+
+        BSTNode n = new BSTNode(ifAbsent.apply(key));
+        BSTNode parent = ancestors.peek();
+
+        // If the tree is empty, make the node the root of the tree.
+        if (parent == null) {
+            root = n;
+        } else if (comparison < 0) {
+            parent.setLeft(n);
         } else {
-            throw new RuntimeException("Existing element attempting to be added to tree.");
+            parent.setRight(n);
+        }
+        size++;
+        modCount++;
+
+        if (mode == Mode.SPLAY) {
+            splay(n, ancestors);
+        } else {
+            rebalance(ancestors);
         }
+        return n.getData();
     }
 
     /**
@@ -84,102 +244,498 @@ public class BST<T extends Comparable<T>> {
      */
     public void delete(T targetElement) {
         if (root != null) {
-            root = delete(root, targetElement);
+            delete(root, targetElement);
         }
     }
 
     /**
      * @author Nandan
+     * Iteratively unlinks the node equal to targetElement, if there is one, and then
+     * rebalances the nodes along the path back to the root.
      * @param subtreeRoot The subtreeRoot of the subtree.
      * @param targetElement The element to delete from the tree.
-     * @return A node, which is used to update the tree in previous recursive calls.
      */
-    private BSTNode delete(BSTNode subtreeRoot, T targetElement) {
-        if (subtreeRoot != null) {
-            int comparison = cmp.compare(targetElement, subtreeRoot.getData());
+    private void delete(BSTNode subtreeRoot, T targetElement) {
+        Deque<BSTNode> ancestors = emptyPath();
+        BSTNode target = subtreeRoot;
+
+        while (target != null) {
+            int comparison = cmp.compare(targetElement, target.getData());
+            if (comparison == 0) {
+                break;
+            }
+            ancestors.push(target);
+            target = (comparison < 0) ? target.getLeft() : target.getRight();
+        }
+
+        // The element is not in the tree; nothing to do.
+        if (target == null) {
+            return;
+        }
+        unlink(target, ancestors);
+    }
+
+    /**
+     * Method to unlink a node from the tree and rebalance the path back to the root
+     * @param target the node to unlink
+     * @param ancestors the path from the root down to target's parent, parent on top
+     */
+    private void unlink(BSTNode target, Deque<BSTNode> ancestors) {
+        if (target.getLeft() == null) {
+            replaceChild(ancestors.peek(), target, target.getRight());
+        } else if (target.getRight() == null) {
+            replaceChild(ancestors.peek(), target, target.getLeft());
+        } else {
+            // Node with two children: get the inorder successor (smallest
+            // in the right subtree), remembering the path down to it.
+            ancestors.push(target);
+            BSTNode successor = minimum(target.getRight(), ancestors);
+            target.setData(successor.getData());
 
+            // Delete the inorder successor, which has no left child.
+            replaceChild(ancestors.peek(), successor, successor.getRight());
+        }
+        size--;
+        modCount++;
+        rebalance(ancestors);
+    }
+
+    /**
+     * Method to change an element in a way that may move it in the tree's order, such as
+     * changing the count a frequency tree is ordered by, and then restore the order. Changing
+     * such an element any other way silently breaks the tree. The element stays in its node if
+     * it still falls between its in-order neighbours, which is the common case for a small
+     * change; otherwise it is unlinked and inserted again, in O(log n) time in AVL mode.
+     * @param element the element to change, which is looked up by its place before the change
+     * @param mutator makes the change
+     * @return true if the element was found and changed, false if it is not in the tree, in
+     *         which case mutator is not called
+     * @throws RuntimeException if after the change the element equals another in the tree
+     */
+    public boolean reposition(T element, Consumer<? super T> mutator) {
+        Deque<BSTNode> ancestors = emptyPath();
+        // The nearest ancestors the search turned right and left at, which bound the element.
+        BSTNode lowerBound = null;
+        BSTNode upperBound = null;
+        BSTNode target = root;
+
+        while (target != null) {
+            int comparison = cmp.compare(element, target.getData());
+            if (comparison == 0) {
+                break;
+            }
+            ancestors.push(target);
             if (comparison < 0) {
-                subtreeRoot.setLeft(delete(subtreeRoot.getLeft(), targetElement));
-            } else if (comparison > 0) {
-                subtreeRoot.setRight(delete(subtreeRoot.getRight(), targetElement));
+                upperBound = target;
+                target = target.getLeft();
             } else {
-                // targetElement is equal to the subtreeRoot node.
-                if (subtreeRoot.getLeft() == null) {
-                    return subtreeRoot.getRight();
-                } else if (subtreeRoot.getRight() == null) {
-                    return subtreeRoot.getLeft();
+                lowerBound = target;
+                target = target.getRight();
+            }
+        }
+        if (target == null) {
+            return false;
+        }
+
+        // The in-order neighbours are the extremes of the subtrees, or else the bounds.
+        BSTNode predecessor = (target.getLeft() == null) ? lowerBound : maximum(target.getLeft());
+        BSTNode successor = (target.getRight() == null) ? upperBound : minimum(target.getRight());
+        T data = target.getData();
+        mutator.accept(data);
+
+        if ((predecessor == null || cmp.compare(predecessor.getData(), data) < 0)
+                && (successor == null || cmp.compare(data, successor.getData()) < 0)) {
+            return true;
+        }
+        unlink(target, ancestors);
+        add(data);
+        return true;
+    }
+
+    /**
+     * Method to clear the reusable path for a new descent
+     * @return the empty path
+     */
+    private Deque<BSTNode> emptyPath() {
+        path.clear();
+        return path;
+    }
+
+    /**
+     * Method to replace the child of a node with another node, or the root when there is
+     * no parent
+     * @param parent the parent of oldChild, or null when oldChild is the root
+     * @param oldChild the node being replaced
+     * @param newChild the node taking its place
+     */
+    private void replaceChild(BSTNode parent, BSTNode oldChild, BSTNode newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.getLeft() == oldChild) {
+            parent.setLeft(newChild);
+        } else {
+            parent.setRight(newChild);
+        }
+    }
+
+    /**
+     * Method to bring the height and size of every node on a path up to date, deepest first,
+     * after the subtree below it has changed, rebalancing each one in AVL mode. Once a subtree
+     * comes out the same height as before, nothing above it can need rebalancing, and only the
+     * sizes are brought up to date the rest of the way.
+     * @param ancestors the path from the root, with the deepest node on top
+     */
+    private void rebalance(Deque<BSTNode> ancestors) {
+        while (!ancestors.isEmpty()) {
+            BSTNode n = ancestors.pop();
+            int previousHeight = n.height;
+            BSTNode balanced = balance(n);
+            if (balanced != n) {
+                replaceChild(ancestors.peek(), n, balanced);
+            } else if (n.height == previousHeight) {
+                // No node above can change height, but each subtree above has changed size.
+                while (!ancestors.isEmpty()) {
+                    ancestors.pop().updateSize();
                 }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to lift a node to the root by rotations taken two levels at a time, which also
+     * roughly halves the depth of every node on its path. Each rotation brings the heights
+     * and sizes of the two nodes it moves up to date, lower node first, so the whole path is
+     * up to date at the end.
+     * @param n the node
+     * @param ancestors the path from the root down to n's parent, parent on top
+     */
+    private void splay(BSTNode n, Deque<BSTNode> ancestors) {
+        if (ancestors.isEmpty()) {
+            return;
+        }
+        while (!ancestors.isEmpty()) {
+            BSTNode parent = ancestors.pop();
+            BSTNode grandparent = ancestors.poll();
+            boolean leftChild = parent.getLeft() == n;
+
+            if (grandparent == null) {
+                // Zig: n is a child of the root.
+                root = leftChild ? rotateRight(parent) : rotateLeft(parent);
+                break;
+            }
+            boolean parentLeftChild = grandparent.getLeft() == parent;
+            BSTNode lifted;
+            if (leftChild == parentLeftChild) {
+                // Zig-zig: rotate the grandparent first, then the parent.
+                lifted = leftChild ? rotateRight(rotateRight(grandparent)) : rotateLeft(rotateLeft(grandparent));
+            } else if (leftChild) {
+                // Zig-zag, n a left child of a right child.
+                grandparent.setRight(rotateRight(parent));
+                lifted = rotateLeft(grandparent);
+            } else {
+                grandparent.setLeft(rotateLeft(parent));
+                lifted = rotateRight(grandparent);
+            }
+            replaceChild(ancestors.peek(), grandparent, lifted);
+        }
+        modCount++;
+    }
 
-                // Node with two children: get the inorder successor (smallest
-                // in the right subtree)
-                subtreeRoot.setData(minimum(subtreeRoot.getRight()).getData());
+    /**
+     * Method to update the height of a node and, in AVL mode, restore the AVL property at it
+     * when its subtrees differ in height by two. In PLAIN mode the node is never moved.
+     * @param n the root of the subtree to rebalance
+     * @return the root of the rebalanced subtree
+     */
+    private BSTNode balance(BSTNode n) {
+        n.update();
+        if (mode != Mode.AVL) {
+            return n;
+        }
+        int skew = n.balanceFactor();
 
-                // Delete the inorder successor
-                subtreeRoot.setRight(delete(subtreeRoot.getRight(), subtreeRoot.getData()));
+        if (skew > 1) {
+            // Left-heavy; a right-leaning left child needs a left-right double rotation.
+            if (n.getLeft().balanceFactor() < 0) {
+                n.setLeft(rotateLeft(n.getLeft()));
+            }
+            return rotateRight(n);
+        } else if (skew < -1) {
+            // Right-heavy; a left-leaning right child needs a right-left double rotation.
+            if (n.getRight().balanceFactor() > 0) {
+                n.setRight(rotateRight(n.getRight()));
             }
+            return rotateLeft(n);
         }
-        return subtreeRoot;
+        return n;
+    }
+
+    /**
+     * Method to rotate a subtree to the right, lifting its left child
+     * @param n the root of the subtree
+     * @return the new root of the subtree
+     */
+    private BSTNode rotateRight(BSTNode n) {
+        BSTNode pivot = n.getLeft();
+        n.setLeft(pivot.getRight());
+        pivot.setRight(n);
+        n.update();
+        pivot.update();
+        return pivot;
+    }
+
+    /**
+     * Method to rotate a subtree to the left, lifting its right child
+     * @param n the root of the subtree
+     * @return the new root of the subtree
+     */
+    private BSTNode rotateLeft(BSTNode n) {
+        BSTNode pivot = n.getRight();
+        n.setRight(pivot.getLeft());
+        pivot.setLeft(n);
+        n.update();
+        pivot.update();
+        return pivot;
     }
 
     /**
-     * If the data is found within the tree, the path along the edges of the tree are
-     * available in the tree's path field. If the data is not found, the path is
-     * emptied and null is returned.
+     * Method to find an element in the tree. Searching changes nothing, so any number of
+     * threads may search a tree at once as long as none is changing it, except in SPLAY mode,
+     * where the element found, or else the last node looked at, is splayed to the root.
      * @param t The data to look for in the tree.
      * @return The data found: the corresponding element equivalent to the data searched for, t, or null.
      */
     public T find(T t) {
-        // Empty the stack before beginning a search.
-        path.clear();
+        if (mode == Mode.SPLAY) {
+            return findAndSplay(t);
+        }
+        BSTNode n = find(t, root);
+        return (n == null) ? null : n.getData();
+    }
+
+    /**
+     * Method to find an element and splay the node where the search ended
+     * @param t the element to look for
+     * @return the element equal to t, or null
+     */
+    private T findAndSplay(T t) {
+        Deque<BSTNode> ancestors = emptyPath();
+        BSTNode n = root;
+        while (n != null) {
+            int comparison = cmp.compare(t, n.getData());
+            if (comparison == 0) {
+                splay(n, ancestors);
+                return n.getData();
+            }
+            BSTNode next = (comparison < 0) ? n.getLeft() : n.getRight();
+            if (next == null) {
+                // Splaying the last node looked at keeps a run of misses cheap too.
+                splay(n, ancestors);
+                return null;
+            }
+            ancestors.push(n);
+            n = next;
+        }
+        return null;
+    }
+
+    /**
+     * Method to return the greatest element less than or equal to the given one
+     * @param t the element to look below
+     * @return the floor of t, or null if every element is greater
+     */
+    public T floor(T t) {
+        return closest(t, true, true);
+    }
+
+    /**
+     * Method to return the least element greater than or equal to the given one
+     * @param t the element to look above
+     * @return the ceiling of t, or null if every element is less
+     */
+    public T ceiling(T t) {
+        return closest(t, false, true);
+    }
 
-        // Search for an element containing data equivalent to the search parameter object.
-        find(t, root);
+    /**
+     * Method to return the greatest element strictly less than the given one
+     * @param t the element to look below
+     * @return the element before t, or null if there is none
+     */
+    public T lower(T t) {
+        return closest(t, true, false);
+    }
 
-        // Return null if the path stack is empty; otherwise, return the found object.
-        return (path.empty()) ? null : path.peek().getData();
+    /**
+     * Method to return the least element strictly greater than the given one
+     * @param t the element to look above
+     * @return the element after t, or null if there is none
+     */
+    public T higher(T t) {
+        return closest(t, false, false);
+    }
+
+    /**
+     * Method to find the element nearest to another on one side of it, in one descent
+     * @param t the element, which need not be in the tree
+     * @param below true to look below t, false to look above it
+     * @param inclusive true if t itself may be returned
+     * @return the nearest element, or null if there is none on that side
+     */
+    private T closest(T t, boolean below, boolean inclusive) {
+        BSTNode n = root;
+        BSTNode best = null;
+        while (n != null) {
+            int comparison = cmp.compare(t, n.getData());
+            if (comparison == 0 && inclusive) {
+                return n.getData();
+            }
+            if (below ? comparison > 0 : comparison < 0) {
+                // The node is on the right side of t; anything nearer is further in.
+                best = n;
+                n = below ? n.getRight() : n.getLeft();
+            } else {
+                n = below ? n.getLeft() : n.getRight();
+            }
+        }
+        return (best == null) ? null : best.getData();
+    }
+
+    /**
+     * Method to return the element at a position in the tree's order, using the subtree sizes
+     * to descend straight to it
+     * @param k the position, from 0 for the smallest element
+     * @return the element with exactly k elements before it
+     * @throws IndexOutOfBoundsException if k is negative or not less than size()
+     */
+    public T select(int k) {
+        if (k < 0 || k >= size) {
+            throw new IndexOutOfBoundsException("Position " + k + " in a tree of size " + size);
+        }
+        BSTNode n = root;
+        while (true) {
+            int leftSize = sizeOf(n.getLeft());
+            if (k < leftSize) {
+                n = n.getLeft();
+            } else if (k > leftSize) {
+                k -= leftSize + 1;
+                n = n.getRight();
+            } else {
+                return n.getData();
+            }
+        }
+    }
+
+    /**
+     * Method to return the position of an element in the tree's order, in one descent
+     * @param t the element, which need not be in the tree
+     * @return the number of elements less than t, which is the position of t when it is in
+     *         the tree, or where it would go when it is not
+     */
+    public int rank(T t) {
+        int rank = 0;
+        BSTNode n = root;
+        while (n != null) {
+            int comparison = cmp.compare(t, n.getData());
+            if (comparison < 0) {
+                n = n.getLeft();
+            } else {
+                // The node's left subtree is all before t, and so is the node itself unless
+                // it is t.
+                rank += sizeOf(n.getLeft());
+                if (comparison == 0) {
+                    return rank;
+                }
+                rank++;
+                n = n.getRight();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Method to iterate over the elements between two bounds, in order. The iterator starts
+     * after one descent and stops at the upper bound, so reading k elements costs
+     * O(log n + k) in a balanced tree.
+     * @param from the lower bound, or null for none
+     * @param fromInclusive true if an element equal to from is included
+     * @param to the upper bound, or null for none
+     * @param toInclusive true if an element equal to to is included
+     * @return an iterator over the elements in the range
+     */
+    public Iterator<T> subSet(T from, boolean fromInclusive, T to, boolean toInclusive) {
+        return new InOrderIterator<>(this, from, fromInclusive, to, toInclusive);
     }
 
     /**
      * Method to find a specific node
      * @param t the data that is being searched for
      * @param n the starting point to search at
+     * @return the node holding data equal to t, or null if there is none
      */
-    private void find(T t, BSTNode n) {
+    private BSTNode find(T t, BSTNode n) {
         while (n != null) {
-            path.push(n);
             int comparison = cmp.compare(t, n.getData());
             if (comparison < 0) {
                 n = n.getLeft();
             } else if (comparison > 0) {
                 n = n.getRight();
             } else {
-                /* If the comparison is equal to zero we have found the element and no
-                 * other branch applies. Looping stops, path is retained (because n is not
-                 * null), and the method returns to its caller.
-                 */
+                // If the comparison is equal to zero we have found the element.
                 break;
             }
         }
-
-        // Empty the stack, because no element matching the search parameter was found.
-        if (n == null) {
-            path.clear();
-        }
+        return n;
     }
 
     /**
      * Method to return the minimum node of the tree
-     * @param n the starting node (either smallest or needs to recurse)
+     * @param n the starting node (either smallest or the search continues left)
+     * @param ancestors receives every node passed over on the way down to the minimum
      * @return node the smallest node of the tree
      */
-    private BSTNode minimum(BSTNode n) {
+    private BSTNode minimum(BSTNode n, Deque<BSTNode> ancestors) {
         // Either the current node n is the smallest node, because it has no
-        // lesser node, or the method needs to recurse.
-        if (n.getLeft() != null) {
-            return minimum(n.getLeft()); // Tail-recurse
-        } else {
-            return n; // The minimum in the subtree.
+        // lesser node, or the search continues to the left.
+        while (n.getLeft() != null) {
+            ancestors.push(n);
+            n = n.getLeft();
+        }
+        return n; // The minimum in the subtree.
+    }
+
+    /**
+     * Method to return the minimum node of a subtree
+     * @param n the root of the subtree
+     * @return the leftmost node of the subtree
+     */
+    private BSTNode minimum(BSTNode n) {
+        while (n.getLeft() != null) {
+            n = n.getLeft();
+        }
+        return n;
+    }
+
+    /**
+     * Method to return the maximum node of a subtree
+     * @param n the root of the subtree
+     * @return the rightmost node of the subtree
+     */
+    private BSTNode maximum(BSTNode n) {
+        while (n.getRight() != null) {
+            n = n.getRight();
         }
+        return n;
+    }
+
+    /**
+     * Method to return the number of nodes in a subtree
+     * @param n the root of the subtree, which may be null
+     * @return the size of the subtree, or 0 for an empty one
+     */
+    private int sizeOf(BSTNode n) {
+        return (n == null) ? 0 : n.subtreeSize;
     }
 
     /**
@@ -191,64 +747,156 @@ public class BST<T extends Comparable<T>> {
     }
 
     /**
-     * Method to return height of the tree
+     * Method to return height of the tree, which is kept up to date by add and delete
      * @return height of tree
      */
     public int height() {
-        return height(root);
+        return (root == null) ? 0 : root.height;
     }
 
     /**
-     * Method to check for the height of the tree recursively
-     * @param r the root node
-     * @return height of node
+     * Method to measure the shape of the tree in one iterative, level-by-level pass
+     * @return the height, depths, leaves and imbalance of the tree
      */
-    private int height(BSTNode r) {
-        return ( (r == null) ? 0 : (1 + Math.max(height(r.getLeft()), height(r.getRight()))));
+    public Stats stats() {
+        List<Integer> nodesPerDepth = new ArrayList<>();
+        long depthTotal = 0;
+        int leaves = 0;
+        Queue<BSTNode> level = new ArrayDeque<>();
+        if (root != null) {
+            level.add(root);
+        }
+
+        while (!level.isEmpty()) {
+            int depth = nodesPerDepth.size();
+            int width = level.size();
+            nodesPerDepth.add(width);
+            depthTotal += (long) depth * width;
+
+            // Replace the current level with the next one.
+            for (int remaining = width; remaining > 0; remaining--) {
+                BSTNode n = level.remove();
+                if (n.getLeft() == null && n.getRight() == null) {
+                    leaves++;
+                }
+                if (n.getLeft() != null) {
+                    level.add(n.getLeft());
+                }
+                if (n.getRight() != null) {
+                    level.add(n.getRight());
+                }
+            }
+        }
+        return new Stats(nodesPerDepth, depthTotal, leaves);
     }
 
     /**
-     * Static class to initialize the level order iterator
+     * The shape of a tree at the time it was measured. Depths count edges from the root, so
+     * the root is at depth 0 and the height is one more than the maximum depth.
+     */
+    public static class Stats {
+        private final int[] depthHistogram;
+        private final int nodes;
+        private final double meanDepth;
+        private final int leafCount;
+
+        /**
+         * Constructor for the statistics gathered by stats(), here or in ArrayBST
+         * @param nodesPerDepth the number of nodes at each depth
+         * @param depthTotal the sum of the depths of all nodes
+         * @param leafCount the number of nodes without children
+         */
+        Stats(List<Integer> nodesPerDepth, long depthTotal, int leafCount) {
+            this.depthHistogram = new int[nodesPerDepth.size()];
+            int total = 0;
+            for (int depth = 0; depth < depthHistogram.length; depth++) {
+                depthHistogram[depth] = nodesPerDepth.get(depth);
+                total += depthHistogram[depth];
+            }
+            this.nodes = total;
+            this.meanDepth = (total == 0) ? 0 : (double) depthTotal / total;
+            this.leafCount = leafCount;
+        }
+
+        /**
+         * Method to return the height of the tree
+         * @return the number of levels
+         */
+        public int getHeight() {
+            return depthHistogram.length;
+        }
+
+        /**
+         * Method to return the greatest depth of any node
+         * @return the maximum depth, or -1 for an empty tree
+         */
+        public int getMaxDepth() {
+            return depthHistogram.length - 1;
+        }
+
+        /**
+         * Method to return the average depth of the nodes, which is the average number of
+         * comparisons a successful find makes, less one
+         * @return the mean depth
+         */
+        public double getMeanDepth() {
+            return meanDepth;
+        }
+
+        /**
+         * Method to return the number of nodes without children
+         * @return the leaf count
+         */
+        public int getLeafCount() {
+            return leafCount;
+        }
+
+        /**
+         * Method to return how much taller the tree is than a perfectly balanced tree of the
+         * same size
+         * @return the height divided by the balanced height; 1 when perfectly balanced
+         */
+        public double getImbalance() {
+            return (nodes == 0) ? 1 : (double) getHeight() / balancedHeight(nodes);
+        }
+
+        /**
+         * Method to return the number of nodes at each depth
+         * @return a new array indexed by depth
+         */
+        public int[] getDepthHistogram() {
+            return depthHistogram.clone();
+        }
+    }
+
+    /**
+     * Static class to initialize the level order iterator. The tree is walked as next() is
+     * called; only the frontier of nodes waiting to be visited is kept.
      * @param <T> The type the iterator yields, which is the same type as the tree the iterator is initialized with.
      */
     static class LevelOrderIterator<T extends Comparable<T>> implements Iterator<T> {
 
         /*
          Non-static; it is very important that there are no static fields in this static nested class; every iterator
-         is its own object and needs to be so, such that the typeQueue relates to a specific iteration, not the whole
+         is its own object and needs to be so, such that the frontier relates to a specific iteration, not the whole
          class of Iterators!
         */
-        private final Queue<T> typeQueue = new LinkedList<>();
+        private final Queue<BST<T>.BSTNode> frontier = new ArrayDeque<>();
+        private final BST<T> tree;
+        private final int expectedModCount;
 
         /**
          * Default constructor of the LevelOrder iterator
          * @param tree the tree that needs to be traversed
          */
         public LevelOrderIterator(BST<T> tree) {
-            if (tree.root == null) {
-                // The root node is null, so the returnQueue remains empty;
-                // hasNext() will report false, and next() will throw an exception
-                // per convention.
-                return;
-            }
-
-            Queue<BST<T>.BSTNode> queue = new LinkedList<>();
-            
-            // Add the root of the tree to the queue to begin the iterative processing.
-            queue.add(tree.root);
-
-            while (!queue.isEmpty()) {
-                BST<T>.BSTNode curr = queue.remove();
-                
-                // Provide the data to the iterator.
-                this.typeQueue.add(curr.getData());
+            this.tree = tree;
+            this.expectedModCount = tree.modCount;
 
-                if (curr.getLeft() != null) {
-                    queue.add(curr.getLeft());
-                }
-                if (curr.getRight() != null) {
-                    queue.add(curr.getRight());
-                }
+            // If the root node is null the frontier remains empty; hasNext() will
+            // report false, and next() will throw an exception per convention.
+            if (tree.root != null) {
+                frontier.add(tree.root);
             }
         }
 
@@ -257,7 +905,8 @@ public class BST<T extends Comparable<T>> {
          * @return A boolean describing whether there are elements left to traverse.
          */
         public boolean hasNext() {
-            return !typeQueue.isEmpty();
+            checkForComodification(tree, expectedModCount);
+            return !frontier.isEmpty();
         }
 
         /**
@@ -265,45 +914,99 @@ public class BST<T extends Comparable<T>> {
          * @return T the next element in the Tree.
          */
         public T next() {
-            return typeQueue.remove();
+            checkForComodification(tree, expectedModCount);
+            BST<T>.BSTNode curr = frontier.remove();
+
+            if (curr.getLeft() != null) {
+                frontier.add(curr.getLeft());
+            }
+            if (curr.getRight() != null) {
+                frontier.add(curr.getRight());
+            }
+            return curr.getData();
         }
     }
 
     /**
-     * Static class to initialize the In-order iterator
+     * Static class to initialize the In-order iterator. The tree is walked as next() is
+     * called; only the stack of ancestors whose right subtrees are still unvisited is kept,
+     * so reading the first k elements costs O(height + k). It may be limited to a range of
+     * elements (see BST.subSet).
      * @param <T> The type the iterator yields, which is the same type as the tree the iterator is initialized with.
      */
     static class InOrderIterator<T extends Comparable<T>> implements Iterator<T> {
-        private final Queue<T> queue = new LinkedList<>();
+        private final Deque<BST<T>.BSTNode> stack = new ArrayDeque<>();
+        private final BST<T> tree;
+        private final int expectedModCount;
+        // The upper bound of the range, or null for none.
+        private final T to;
+        private final boolean toInclusive;
 
         public InOrderIterator(BST<T> tree) throws IllegalArgumentException {
+            this(tree, null, false, null, false);
+        }
+
+        /**
+         * Constructor for an iterator over the elements of a tree between two bounds
+         * @param tree the tree
+         * @param from the lower bound, or null for none
+         * @param fromInclusive true if an element equal to from is included
+         * @param to the upper bound, or null for none
+         * @param toInclusive true if an element equal to to is included
+         * @throws IllegalArgumentException if tree is null
+         */
+        public InOrderIterator(BST<T> tree, T from, boolean fromInclusive, T to, boolean toInclusive)
+                throws IllegalArgumentException {
             if (tree == null) {
                 throw new IllegalArgumentException("tree parameter cannot be null.");
+            }
+            this.tree = tree;
+            this.expectedModCount = tree.modCount;
+            this.to = to;
+            this.toInclusive = toInclusive;
+            if (from == null) {
+                pushLeftSpine(tree.root);
             } else {
-                Stack<BST<T>.BSTNode> stack = new Stack<>();
+                // Stack the nodes in range on the path to from, as pushLeftSpine would have
+                // left them had the iteration begun at the smallest element.
                 BST<T>.BSTNode current = tree.root;
-
-                // FIXME: there is a circularity in the tree when using input one.
-                while(!stack.empty() || current != null) {
-                    if (current != null) {
-                        current = stack.push(current).getLeft();
-                    }
-                    else {
-                        current = stack.pop();
-                        this.queue.add(current.getData());
+                while (current != null) {
+                    int comparison = tree.cmp.compare(current.getData(), from);
+                    if (comparison > 0 || (comparison == 0 && fromInclusive)) {
+                        stack.push(current);
+                        current = current.getLeft();
+                    } else {
                         current = current.getRight();
                     }
                 }
             }
         }
 
+        /**
+         * Method to push a node and all of its left descendants onto the stack
+         * @param current the first node to push, which may be null
+         */
+        private void pushLeftSpine(BST<T>.BSTNode current) {
+            while (current != null) {
+                stack.push(current);
+                current = current.getLeft();
+            }
+        }
+
         /**
          * Override method to return a boolean if there is a next
          * @return A boolean describing whether there are elements left to traverse.
          */
         @Override
         public boolean hasNext() {
-            return !queue.isEmpty();
+            checkForComodification(tree, expectedModCount);
+            if (stack.isEmpty()) {
+                return false;
+            } else if (to == null) {
+                return true;
+            }
+            int comparison = tree.cmp.compare(stack.peek().getData(), to);
+            return comparison < 0 || (comparison == 0 && toInclusive);
         }
 
         /**
@@ -312,7 +1015,25 @@ public class BST<T extends Comparable<T>> {
          */
         @Override
         public T next() {
-            return queue.remove();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BST<T>.BSTNode current = stack.pop();
+            pushLeftSpine(current.getRight());
+            return current.getData();
+        }
+    }
+
+    /**
+     * Method used by the iterators to fail fast when the tree they walk has been
+     * structurally modified since they were created
+     * @param tree the tree being iterated
+     * @param expectedModCount the modification count of the tree when the iterator was created
+     * @throws ConcurrentModificationException if the tree has since been modified
+     */
+    private static void checkForComodification(BST<?> tree, int expectedModCount) {
+        if (tree.modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
         }
     }
 
@@ -323,6 +1044,10 @@ public class BST<T extends Comparable<T>> {
         private T data;
         private BSTNode left;
         private BSTNode right;
+        // The height of the subtree rooted at this node.
+        private int height = 1;
+        // The number of nodes in the subtree rooted at this node.
+        private int subtreeSize = 1;
 
         /**
          * Default constructor for a BST Node
@@ -384,6 +1109,34 @@ public class BST<T extends Comparable<T>> {
             return right;
         }
 
+        /**
+         * Method to recompute the height and size of this node's subtree from those of its
+         * children
+         */
+        private void update() {
+            int leftHeight = (left == null) ? 0 : left.height;
+            int rightHeight = (right == null) ? 0 : right.height;
+            height = 1 + Math.max(leftHeight, rightHeight);
+            updateSize();
+        }
+
+        /**
+         * Method to recompute the size of this node's subtree from the sizes of its children
+         */
+        private void updateSize() {
+            subtreeSize = 1 + sizeOf(left) + sizeOf(right);
+        }
+
+        /**
+         * Method to return the difference in height between the left and right subtrees
+         * @return positive when left-heavy, negative when right-heavy
+         */
+        private int balanceFactor() {
+            int leftHeight = (left == null) ? 0 : left.height;
+            int rightHeight = (right == null) ? 0 : right.height;
+            return leftHeight - rightHeight;
+        }
+
         /**
          * Comparison method to compare two nodes
          * @param n the object to be compared.
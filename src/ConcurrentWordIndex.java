@@ -0,0 +1,84 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A word index that many threads can add to at once, such as several readers of sockets or
+ * files feeding one count. The words are kept in a lock-free skip list, each with an atomic
+ * count, so adding a word that is already there never blocks, and a new word only contends
+ * with threads adding at the same place in the list.
+ * <p>
+ * Iteration is weakly consistent: it never fails while words are being added, and yields each
+ * word with its count at the moment the word is reached.
+ */
+public class ConcurrentWordIndex implements WordIndex {
+    private final ConcurrentSkipListMap<Token, AtomicInteger> counts = new ConcurrentSkipListMap<>();
+    // Each thread copies the words it adds into its own arena, since arenas are not thread-safe.
+    private final ThreadLocal<WordArena> arenas = ThreadLocal.withInitial(WordArena::new);
+
+    @Override
+    public void add(Token word) {
+        add(word, 1);
+    }
+
+    @Override
+    public void add(Token word, int occurrences) {
+        AtomicInteger count = counts.get(word);
+        if (count == null) {
+            // The word may be a view of a reused buffer, so only a copy of it is put in the map.
+            // It goes in already counted, so no reader ever sees it with a count of 0.
+            count = counts.putIfAbsent(arenas.get().intern(word), new AtomicInteger(occurrences));
+            if (count == null) {
+                return;
+            }
+        }
+        count.addAndGet(occurrences);
+    }
+
+    /**
+     * Method to return the number of distinct words counted, which is only an estimate while
+     * words are being added
+     * @return the number of words
+     */
+    @Override
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * Method to return the height of the tree the words are kept in, which there is none of,
+     * since a skip list is not a tree
+     * @return -1
+     */
+    @Override
+    public int height() {
+        return -1;
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        Iterator<Map.Entry<Token, AtomicInteger>> entries = counts.entrySet().iterator();
+        return new Iterator<Token>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                // A new token each time, so no thread ever changes one another can see.
+                Map.Entry<Token, AtomicInteger> entry = entries.next();
+                byte[] text = new byte[entry.getKey().length()];
+                entry.getKey().getBytes(text, 0);
+                Token word = new Token(text, 0, text.length);
+                word.addCount(entry.getValue().get() - 1);
+                return word;
+            }
+        };
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A word index saved to a file, so that a report can be made again without reading the input
+ * again. The file is read through a memory mapping: words can be looked up straight from it
+ * by binary search, or all of them read in order to rebuild a balanced tree in O(n).
+ * <p>
+ * The file holds, in big-endian order:
+ * <pre>
+ *   int   magic "A3WI"
+ *   int   version (1)
+ *   long  total words read, stop words included
+ *   int   distinct stop words seen
+ *   int   n, the number of distinct words
+ *   n + 1 entries of (int offset of the word's text, int count); the last has a count of 0
+ *         and only marks where the text of the last word ends
+ *   the text of every word, Latin-1, back to back in alphabetical order
+ * </pre>
+ */
+public class IndexSnapshot implements Iterable<Token> {
+    private static final int MAGIC = 0x41335749;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 8;
+
+    private final MappedByteBuffer file;
+    private final long totalWordCount;
+    private final int stopWordCount;
+    private final int size;
+    // Where the text of the words begins.
+    private final int textStart;
+
+    /**
+     * Constructor for a snapshot read from a mapped file
+     * @param file the whole file
+     * @throws IOException if the file is not a snapshot this version can read
+     */
+    private IndexSnapshot(MappedByteBuffer file) throws IOException {
+        this.file = file;
+        if (file.capacity() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException("Not a word index snapshot");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + file.getInt(4));
+        }
+        this.totalWordCount = file.getLong(8);
+        this.stopWordCount = file.getInt(16);
+        this.size = file.getInt(20);
+        // Checked in long, since the size of a corrupt header could overflow textStart.
+        if (size < 0 || size > (file.capacity() - HEADER_SIZE) / (long) ENTRY_SIZE - 1) {
+            throw new IOException("Truncated or corrupt snapshot");
+        }
+        this.textStart = HEADER_SIZE + (size + 1) * ENTRY_SIZE;
+        checkOffsets();
+    }
+
+    /**
+     * Method to check that the offsets of the words start at 0, never go back, and end with
+     * the file, so that every word read later lies within the text
+     * @throws IOException if they do not
+     */
+    private void checkOffsets() throws IOException {
+        int textSize = file.capacity() - textStart;
+        int previous = 0;
+        for (int i = 0; i <= size; i++) {
+            int offset = offset(i);
+            if (offset < previous || offset > textSize || (i == 0 && offset != 0)) {
+                throw new IOException("Truncated or corrupt snapshot");
+            }
+            previous = offset;
+        }
+        if (previous != textSize) {
+            throw new IOException("Truncated or corrupt snapshot");
+        }
+    }
+
+    /**
+     * Method to save a word index, with the totals that go with it
+     * @param path the file to write
+     * @param index the words, which are read in alphabetical order twice
+     * @param totalWordCount the number of words read, stop words included
+     * @param stopWordCount the number of distinct stop words seen
+     * @throws IOException if the file cannot be written, or the text of the words is too
+     *                     big for the format
+     */
+    public static void write(Path path, WordIndex index, long totalWordCount, int stopWordCount)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(totalWordCount);
+            out.writeInt(stopWordCount);
+            out.writeInt(index.size());
+
+            // The entries first, then the text they point to.
+            long offset = 0;
+            for (Token word : index) {
+                out.writeInt((int) offset);
+                out.writeInt(word.getCount());
+                offset += word.length();
+                if (HEADER_SIZE + (index.size() + 1L) * ENTRY_SIZE + offset > Integer.MAX_VALUE) {
+                    throw new IOException("Too much text for a snapshot");
+                }
+            }
+            out.writeInt((int) offset);
+            out.writeInt(0);
+
+            byte[] text = new byte[64];
+            for (Token word : index) {
+                if (word.length() > text.length) {
+                    text = new byte[Math.max(word.length(), 2 * text.length)];
+                }
+                word.getBytes(text, 0);
+                out.write(text, 0, word.length());
+            }
+        }
+    }
+
+    /**
+     * Method to open a snapshot by mapping its file into memory. Only the header and the
+     * offsets of the words are read, to check them; the text is not read until it is used.
+     * @param path the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static IndexSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a word index snapshot");
+            }
+            return new IndexSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Method to return the number of words read, stop words included, when the index was saved
+     * @return the total word count
+     */
+    public long getTotalWordCount() {
+        return totalWordCount;
+    }
+
+    /**
+     * Method to return the number of distinct stop words seen when the index was saved
+     * @return the stop word count
+     */
+    public int getStopWordCount() {
+        return stopWordCount;
+    }
+
+    /**
+     * Method to return the number of distinct words in the snapshot
+     * @return the number of words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to look a word up in the mapped file, in O(log n) without reading the rest
+     * @param word the word
+     * @return the count of the word, or 0 if it is not in the snapshot
+     */
+    public int count(Token word) {
+        byte[] key = new byte[word.length()];
+        word.getBytes(key, 0);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(key, middle);
+            if (comparison == 0) {
+                return file.getInt(HEADER_SIZE + middle * ENTRY_SIZE + 4);
+            } else if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Method to copy a word of the snapshot onto the heap
+     * @param i the position of the word in alphabetical order
+     * @return a new token with the word's text and count
+     */
+    public Token get(int i) {
+        int start = offset(i);
+        byte[] text = new byte[offset(i + 1) - start];
+        ByteBuffer slice = file.duplicate();
+        slice.position(textStart + start);
+        slice.get(text);
+        Token token = new Token(text, 0, text.length);
+        token.addCount(file.getInt(HEADER_SIZE + i * ENTRY_SIZE + 4) - 1);
+        return token;
+    }
+
+    /**
+     * Method to iterate over the words in alphabetical order. Each token is a view of a
+     * buffer the iterator reuses, so it is only valid until the next call; copy it, or intern
+     * it into a WordArena, to keep it.
+     * @return an iterator over the words, with their counts
+     */
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            private final ByteBuffer text = file.duplicate();
+            private byte[] word = new byte[64];
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int length = offset(next + 1) - offset(next);
+                if (length > word.length) {
+                    word = new byte[Math.max(length, 2 * word.length)];
+                }
+                text.position(textStart + offset(next));
+                text.get(word, 0, length);
+                Token token = new Token(word, 0, length);
+                token.addCount(file.getInt(HEADER_SIZE + next * ENTRY_SIZE + 4) - 1);
+                next++;
+                return token;
+            }
+        };
+    }
+
+    /**
+     * Method to return the offset of a word's text from the start of the text
+     * @param i the position of the word, or size for the end of the text
+     * @return the offset
+     */
+    private int offset(int i) {
+        return file.getInt(HEADER_SIZE + i * ENTRY_SIZE);
+    }
+
+    /**
+     * Method to compare a word with a word of the snapshot, in the order Token.compareTo gives
+     * @param key the bytes of the word
+     * @param i the position of the snapshot's word
+     * @return negative, zero or positive as key is before, equal to or after it
+     */
+    private int compare(byte[] key, int i) {
+        int start = textStart + offset(i);
+        int length = textStart + offset(i + 1) - start;
+        int shorter = Math.min(key.length, length);
+        for (int j = 0; j < shorter; j++) {
+            int difference = (key[j] & 0xFF) - (file.get(start + j) & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return key.length - length;
+    }
+}
@@ -0,0 +1,147 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the wall time and allocation of each phase of a run, plus any other figures worth
+ * reporting about it, and renders them as JSON.
+ * <p>
+ * Allocation is read from the calling thread's allocation counter, so work done on other
+ * threads (the parallel ingest workers) is not included in it.
+ */
+public class Metrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Map<String, Object>> phases = new LinkedHashMap<>();
+    private final Map<String, Object> figures = new LinkedHashMap<>();
+
+    private String currentPhase = null;
+    private long phaseStartNanos;
+    private long phaseStartAllocated;
+
+    /**
+     * Method to start timing a phase, ending the current one if there is one
+     * @param phase the name of the phase
+     */
+    public void begin(String phase) {
+        end();
+        currentPhase = phase;
+        phases.put(phase, new LinkedHashMap<>());
+        phaseStartAllocated = allocatedBytes();
+        phaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Method to stop timing the current phase, if there is one
+     */
+    public void end() {
+        if (currentPhase == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - phaseStartNanos;
+        long allocated = allocatedBytes() - phaseStartAllocated;
+        Map<String, Object> phase = phases.get(currentPhase);
+        phase.put("wallMillis", nanos / 1e6);
+        phase.put("allocatedBytes", (phaseStartAllocated < 0) ? null : allocated);
+        currentPhase = null;
+    }
+
+    /**
+     * Method to record a figure about a phase, such as the words it read
+     * @param phase the name of the phase, which must have begun
+     * @param name the name of the figure
+     * @param value a number, string, int array, map or null
+     */
+    public void put(String phase, String name, Object value) {
+        phases.get(phase).put(name, value);
+    }
+
+    /**
+     * Method to record a figure about the whole run
+     * @param name the name of the figure
+     * @param value a number, string, int array, map or null
+     */
+    public void put(String name, Object value) {
+        figures.put(name, value);
+    }
+
+    /**
+     * Method to return the wall time of a finished phase
+     * @param phase the name of the phase
+     * @return the wall time in seconds
+     */
+    public double seconds(String phase) {
+        return ((Double) phases.get(phase).get("wallMillis")) / 1e3;
+    }
+
+    /**
+     * Method to render everything recorded as a JSON object
+     * @return the JSON text, on one line
+     */
+    public String toJson() {
+        end();
+        Map<String, Object> all = new LinkedHashMap<>();
+        all.put("phases", phases);
+        all.putAll(figures);
+        StringBuilder json = new StringBuilder();
+        appendJson(json, all);
+        return json.toString();
+    }
+
+    /**
+     * Method to append a value to JSON text
+     * @param json the text so far
+     * @param value a number, string, int array, map or null
+     */
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJson(json, entry.getKey().toString());
+                json.append(':');
+                appendJson(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof int[]) {
+            json.append('[');
+            int[] values = (int[]) value;
+            for (int i = 0; i < values.length; i++) {
+                json.append((i == 0) ? "" : ",").append(values[i]);
+            }
+            json.append(']');
+        } else if (value instanceof String) {
+            json.append('"');
+            for (char c : ((String) value).toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+            json.append("null");
+        } else {
+            json.append(value); // Numbers, booleans and null print as themselves.
+        }
+    }
+
+    /**
+     * Method to return the number of bytes the calling thread has allocated
+     * @return the count, or a negative number if the JVM does not measure it
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
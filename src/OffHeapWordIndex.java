@@ -0,0 +1,465 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A word index that keeps its words and their counts off the Java heap, for vocabularies too
+ * large to hold as objects without long garbage collection pauses.
+ * <p>
+ * The words form an AVL tree, built exactly as BST builds one in AVL mode, whose nodes are
+ * fixed-size records in direct buffers; the text of the words is packed into other direct
+ * buffers. The heap holds only the buffers themselves however many words there are, and
+ * Tokens are made only as the words are iterated over.
+ * <p>
+ * Once every word is in, sortViews() also orders the words by frequency and by length, as
+ * arrays of node numbers in direct buffers. An index is not thread-safe.
+ * <p>
+ * Direct buffers count against the JVM's limit on direct memory, which is the maximum heap
+ * size unless -XX:MaxDirectMemorySize sets it. A large vocabulary may need that raised: the
+ * index takes about 32 bytes a word for its nodes, plus the text, plus 8 bytes a word once
+ * sortViews() has been called.
+ */
+public class OffHeapWordIndex implements WordIndex {
+    // The fields of a node record: where its text is, its count, its children and its height.
+    private static final int NODE_SIZE = 32;
+    private static final int TEXT_PAGE = 0;
+    private static final int TEXT_OFFSET = 4;
+    private static final int LENGTH = 8;
+    private static final int COUNT = 12;
+    private static final int LEFT = 16;
+    private static final int RIGHT = 20;
+    private static final int HEIGHT = 24;
+    private static final int NONE = -1;
+    // Deeper than an AVL tree of Integer.MAX_VALUE nodes can grow.
+    private static final int MAX_HEIGHT = 64;
+
+    // Nodes are allocated 2^16 (2 MiB) at a time and text 1 MiB at a time, so the index grows
+    // without ever copying what it holds.
+    private static final int NODE_PAGE_SHIFT = 16;
+    private static final int NODE_PAGE_MASK = (1 << NODE_PAGE_SHIFT) - 1;
+    private static final int TEXT_PAGE_SIZE = 1 << 20;
+
+    private final List<ByteBuffer> nodePages = new ArrayList<>();
+    private final List<ByteBuffer> textPages = new ArrayList<>();
+    private int textUsed = 0;
+    private int root = NONE;
+    private int size = 0;
+
+    // The node numbers in frequency and in length order, once sortViews() has been called.
+    private IntBuffer byFrequency = null;
+    private IntBuffer byLength = null;
+
+    // The word being looked up, and the nodes passed on the way down to it.
+    private byte[] probe = new byte[32];
+    private final int[] path = new int[MAX_HEIGHT];
+
+    @Override
+    public void add(Token word) {
+        add(word, 1);
+    }
+
+    @Override
+    public void add(Token word, int occurrences) {
+        int length = word.length();
+        if (length > probe.length) {
+            probe = new byte[Math.max(length, 2 * probe.length)];
+        }
+        word.getBytes(probe, 0);
+
+        int depth = 0;
+        int difference = 0;
+        for (int n = root; n != NONE; n = get(n, (difference < 0) ? LEFT : RIGHT)) {
+            difference = compare(probe, length, n);
+            if (difference == 0) {
+                set(n, COUNT, get(n, COUNT) + occurrences);
+                return;
+            }
+            path[depth++] = n;
+        }
+
+        int added = newNode(length, occurrences);
+        if (depth == 0) {
+            root = added;
+            return;
+        }
+        set(path[depth - 1], (difference < 0) ? LEFT : RIGHT, added);
+
+        // Rebalance on the way back up, stopping once a subtree keeps its height.
+        while (depth > 0) {
+            int n = path[--depth];
+            int previousHeight = get(n, HEIGHT);
+            int balanced = balance(n);
+            if (balanced != n) {
+                replaceChild((depth > 0) ? path[depth - 1] : NONE, n, balanced);
+            } else if (get(n, HEIGHT) == previousHeight) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int height() {
+        return height(root);
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new InOrderIterator();
+    }
+
+    /**
+     * Method to order the words by frequency and by length, most frequent and longest first,
+     * with ties in alphabetical order, as Token.CompFreqDesc and Token.CompLengthDesc do.
+     * Words added afterwards are left out of both orders.
+     * @throws IllegalStateException if there are too many words for the node numbers to fit
+     *                               in one direct buffer, which holds at most 2^31 - 1 bytes
+     */
+    public void sortViews() {
+        IntBuffer alphabetical = allocateInts(size);
+        NodeIterator nodes = new NodeIterator();
+        for (int i = 0; i < size; i++) {
+            alphabetical.put(i, nodes.nextNode());
+        }
+        // A stable sort of the alphabetical order leaves ties in alphabetical order.
+        byFrequency = sortDescending(alphabetical, COUNT);
+        byLength = sortDescending(alphabetical, LENGTH);
+    }
+
+    /**
+     * Method to iterate over the words in order of descending frequency
+     * @return an iterator over the words, with their counts
+     * @throws IllegalStateException if sortViews() has not been called
+     */
+    public Iterator<Token> byFrequency() {
+        return viewIterator(byFrequency);
+    }
+
+    /**
+     * Method to iterate over the words in order of descending length
+     * @return an iterator over the words, with their counts
+     * @throws IllegalStateException if sortViews() has not been called
+     */
+    public Iterator<Token> byLength() {
+        return viewIterator(byLength);
+    }
+
+    /**
+     * Method to make a stable merge sort of node numbers by one field of their nodes
+     * @param nodes the node numbers, which are left as they are
+     * @param field the field to sort by, largest first
+     * @return the sorted node numbers, in a new buffer
+     */
+    private IntBuffer sortDescending(IntBuffer nodes, int field) {
+        IntBuffer from = allocateInts(size);
+        IntBuffer to = allocateInts(size);
+        from.put(nodes.duplicate());
+
+        // Merge ever wider runs, bottom up, back and forth between the two buffers.
+        for (long width = 1; width < size; width *= 2) {
+            for (long start = 0; start < size; start += 2 * width) {
+                int i = (int) start;
+                int middle = (int) Math.min(start + width, size);
+                int end = (int) Math.min(start + 2 * width, size);
+                int j = middle;
+                for (int k = i; k < end; k++) {
+                    // Take from the right run only when it is strictly larger, for stability.
+                    if (j < end && (i == middle || get(from.get(j), field) > get(from.get(i), field))) {
+                        to.put(k, from.get(j++));
+                    } else {
+                        to.put(k, from.get(i++));
+                    }
+                }
+            }
+            IntBuffer swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    /**
+     * Method to iterate over the words of a view
+     * @param view the node numbers in view order
+     * @return an iterator over the words
+     */
+    private Iterator<Token> viewIterator(IntBuffer view) {
+        if (view == null) {
+            throw new IllegalStateException("The views have not been sorted.");
+        }
+        return new Iterator<Token>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < view.capacity();
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return token(view.get(next++));
+            }
+        };
+    }
+
+    /**
+     * Method to update the height of a node and restore the AVL property at it, as BST does
+     * @param n the root of the subtree to rebalance
+     * @return the root of the rebalanced subtree
+     */
+    private int balance(int n) {
+        updateHeight(n);
+        int skew = balanceFactor(n);
+
+        if (skew > 1) {
+            // Left-heavy; a right-leaning left child needs a left-right double rotation.
+            if (balanceFactor(get(n, LEFT)) < 0) {
+                set(n, LEFT, rotateLeft(get(n, LEFT)));
+            }
+            return rotateRight(n);
+        } else if (skew < -1) {
+            // Right-heavy; a left-leaning right child needs a right-left double rotation.
+            if (balanceFactor(get(n, RIGHT)) > 0) {
+                set(n, RIGHT, rotateRight(get(n, RIGHT)));
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    /**
+     * Method to rotate a subtree to the right, lifting its left child
+     * @param n the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int rotateRight(int n) {
+        int pivot = get(n, LEFT);
+        set(n, LEFT, get(pivot, RIGHT));
+        set(pivot, RIGHT, n);
+        updateHeight(n);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    /**
+     * Method to rotate a subtree to the left, lifting its right child
+     * @param n the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int rotateLeft(int n) {
+        int pivot = get(n, RIGHT);
+        set(n, RIGHT, get(pivot, LEFT));
+        set(pivot, LEFT, n);
+        updateHeight(n);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    /**
+     * Method to point a parent, or the root, at a new child in place of an old one
+     * @param parent the parent node, or NONE for the root
+     * @param oldChild the child being replaced
+     * @param newChild the child taking its place
+     */
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NONE) {
+            root = newChild;
+        } else if (get(parent, LEFT) == oldChild) {
+            set(parent, LEFT, newChild);
+        } else {
+            set(parent, RIGHT, newChild);
+        }
+    }
+
+    private int height(int n) {
+        return (n == NONE) ? 0 : get(n, HEIGHT);
+    }
+
+    private void updateHeight(int n) {
+        set(n, HEIGHT, 1 + Math.max(height(get(n, LEFT)), height(get(n, RIGHT))));
+    }
+
+    private int balanceFactor(int n) {
+        return height(get(n, LEFT)) - height(get(n, RIGHT));
+    }
+
+    /**
+     * Method to compare a word with the text of a node, in the order Token.compareTo gives
+     * @param word the bytes of the word
+     * @param length the length of the word
+     * @param n the node
+     * @return negative, zero or positive as the word is before, equal to or after the node's
+     */
+    private int compare(byte[] word, int length, int n) {
+        ByteBuffer text = textPages.get(get(n, TEXT_PAGE));
+        int offset = get(n, TEXT_OFFSET);
+        int nodeLength = get(n, LENGTH);
+        int shorter = Math.min(length, nodeLength);
+        for (int i = 0; i < shorter; i++) {
+            int difference = (word[i] & 0xFF) - (text.get(offset + i) & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - nodeLength;
+    }
+
+    /**
+     * Method to make a leaf node for the word in the probe buffer
+     * @param length the length of the word
+     * @param count the count of the word
+     * @return the number of the new node
+     */
+    private int newNode(int length, int count) {
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The index is full.");
+        }
+        int n = size++;
+        if ((n >>> NODE_PAGE_SHIFT) == nodePages.size()) {
+            nodePages.add(allocate(NODE_SIZE << NODE_PAGE_SHIFT));
+        }
+        if (textPages.isEmpty() || length > textPages.get(textPages.size() - 1).capacity() - textUsed) {
+            // Start a new page; the rest of the old one is left unused.
+            textPages.add(allocate(Math.max(TEXT_PAGE_SIZE, length)));
+            textUsed = 0;
+        }
+        ByteBuffer text = textPages.get(textPages.size() - 1);
+        for (int i = 0; i < length; i++) {
+            text.put(textUsed + i, probe[i]);
+        }
+
+        set(n, TEXT_PAGE, textPages.size() - 1);
+        set(n, TEXT_OFFSET, textUsed);
+        set(n, LENGTH, length);
+        set(n, COUNT, count);
+        set(n, LEFT, NONE);
+        set(n, RIGHT, NONE);
+        set(n, HEIGHT, 1);
+        textUsed += length;
+        return n;
+    }
+
+    /**
+     * Method to copy a node onto the heap as a Token
+     * @param n the node
+     * @return a new token with the node's text and count
+     */
+    private Token token(int n) {
+        ByteBuffer text = textPages.get(get(n, TEXT_PAGE));
+        int offset = get(n, TEXT_OFFSET);
+        byte[] bytes = new byte[get(n, LENGTH)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = text.get(offset + i);
+        }
+        Token token = new Token(bytes, 0, bytes.length);
+        token.addCount(get(n, COUNT) - 1);
+        return token;
+    }
+
+    private int get(int n, int field) {
+        return nodePages.get(n >>> NODE_PAGE_SHIFT).getInt((n & NODE_PAGE_MASK) * NODE_SIZE + field);
+    }
+
+    private void set(int n, int field, int value) {
+        nodePages.get(n >>> NODE_PAGE_SHIFT).putInt((n & NODE_PAGE_MASK) * NODE_SIZE + field, value);
+    }
+
+    /**
+     * Method to allocate a direct buffer of ints in native byte order
+     * @param count the number of ints
+     * @return the buffer
+     * @throws IllegalStateException if count ints are more than one buffer can hold
+     */
+    private static IntBuffer allocateInts(int count) {
+        int bytes;
+        try {
+            bytes = Math.multiplyExact(4, count);
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException("Too many words to sort off the heap: " + count
+                    + " node numbers need more than the 2^31 - 1 bytes a direct buffer can hold.");
+        }
+        return allocate(bytes).asIntBuffer();
+    }
+
+    /**
+     * Method to allocate a direct buffer in native byte order
+     * @param bytes the size of the buffer
+     * @return the buffer
+     * @throws OutOfMemoryError if the limit on direct memory is reached, naming the option
+     *                          that raises it
+     */
+    private static ByteBuffer allocate(int bytes) {
+        try {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        } catch (OutOfMemoryError e) {
+            OutOfMemoryError full = new OutOfMemoryError(e.getMessage()
+                    + "; the off-heap index needs more direct memory, set by -XX:MaxDirectMemorySize");
+            full.initCause(e);
+            throw full;
+        }
+    }
+
+    /**
+     * Iterates over the node numbers in alphabetical order, without boxing them.
+     */
+    private class NodeIterator {
+        private final int[] stack = new int[MAX_HEIGHT];
+        private int depth = 0;
+        private final int expectedSize = size;
+
+        NodeIterator() {
+            pushLeftSpine(root);
+        }
+
+        private void pushLeftSpine(int n) {
+            for (; n != NONE; n = get(n, LEFT)) {
+                stack[depth++] = n;
+            }
+        }
+
+        boolean hasNext() {
+            return depth > 0;
+        }
+
+        int nextNode() {
+            if (size != expectedSize) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int n = stack[--depth];
+            pushLeftSpine(get(n, RIGHT));
+            return n;
+        }
+    }
+
+    /**
+     * Iterates over the words in alphabetical order, copying each onto the heap.
+     */
+    private class InOrderIterator implements Iterator<Token> {
+        private final NodeIterator nodes = new NodeIterator();
+
+        @Override
+        public boolean hasNext() {
+            return nodes.hasNext();
+        }
+
+        @Override
+        public Token next() {
+            return token(nodes.nextNode());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Counts the words of an input on several threads. The input is split into chunks at
+ * whitespace, so no word straddles two chunks, and each chunk is tokenized and counted into
+ * its own tree by a fork-join worker. The per-chunk counts are returned in input order, ready
+ * to be merged.
+ * <p>
+ * Given a thread-safe word index, the workers instead all count words straight into it, and
+ * the per-chunk counts only hold the totals and stop words.
+ */
+public class ParallelIngest {
+    // Chunks per thread, so that a thread with an easy chunk can pick up another.
+    private static final int CHUNKS_PER_THREAD = 4;
+    // A single mapping cannot exceed Integer.MAX_VALUE bytes.
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    /**
+     * The words counted in one chunk of the input.
+     */
+    public static class ChunkCounts {
+        // The index shared by every chunk, or null to count into the chunk's own tree.
+        private final WordIndex sharedIndex;
+        private final BST<Token> words = new BST<>(BST.Mode.AVL);
+        // The distinct words, in the order they first occur in the chunk.
+        private final List<Token> firstSeen = new ArrayList<>();
+        private final Set<Token> stopWordsSeen = new HashSet<>();
+        private final WordArena arena = new WordArena();
+        private int totalWordCount = 0;
+
+        private ChunkCounts(WordIndex sharedIndex) {
+            this.sharedIndex = sharedIndex;
+        }
+
+        /**
+         * Method to return the distinct words of the chunk, with their counts, in the order
+         * they first occur
+         * @return the words, which are owned by the chunk until merged; none when the words
+         *         were counted into a shared index
+         */
+        public List<Token> getFirstSeen() {
+            return firstSeen;
+        }
+
+        /**
+         * Method to return the distinct stop words that occurred in the chunk
+         * @return the stop words seen
+         */
+        public Set<Token> getStopWordsSeen() {
+            return stopWordsSeen;
+        }
+
+        /**
+         * Method to return the number of words, stop words included, in the chunk
+         * @return the total word count
+         */
+        public int getTotalWordCount() {
+            return totalWordCount;
+        }
+
+        /**
+         * Method to count every word of a chunk
+         * @param input the words of the chunk
+         * @param stopWords the words to count as stop words rather than add to the tree
+         */
+        private void count(Tokenizer input, Set<Token> stopWords) {
+            while (input.hasNext()) {
+                Token word = input.nextToken();
+                totalWordCount++;
+
+                if (stopWords.contains(word)) {
+                    if (!stopWordsSeen.contains(word)) {
+                        stopWordsSeen.add(arena.intern(word));
+                    }
+                } else if (sharedIndex != null) {
+                    sharedIndex.add(word);
+                } else {
+                    // The word read is only a view of the tokenizer's buffer; keep a copy.
+                    Token token = words.merge(word, arena::intern, Token::incrementCount);
+                    if (token.getCount() == 1) {
+                        firstSeen.add(token);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to count the words of a file, mapping each chunk of it into memory
+     * @param path the file of UTF-8 text
+     * @param threads the number of worker threads
+     * @param stopWords the words to count as stop words
+     * @param sharedIndex a thread-safe index to count every chunk's words into, or null to
+     *                    count each chunk into its own tree
+     * @return the counts of each chunk, in input order
+     * @throws IOException if the file cannot be read
+     */
+    public static List<ChunkCounts> count(Path path, int threads, Set<Token> stopWords, WordIndex sharedIndex)
+            throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            long chunkSize = chunkSize(size, threads);
+            List<ByteBuffer> chunks = new ArrayList<>();
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+
+            long start = 0;
+            while (start < size) {
+                // Move the end of the chunk forward past the next whitespace byte.
+                long end = Math.min(size, start + chunkSize);
+                while (end < size) {
+                    oneByte.clear();
+                    file.read(oneByte, end++);
+                    if (isWhitespace(oneByte.get(0))) {
+                        break;
+                    }
+                }
+                chunks.add(file.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                start = end;
+            }
+            return count(chunks, threads, stopWords, sharedIndex);
+        }
+    }
+
+    /**
+     * Method to count the words of a stream, which is read into memory first
+     * @param in the stream of UTF-8 text
+     * @param threads the number of worker threads
+     * @param stopWords the words to count as stop words
+     * @param sharedIndex a thread-safe index to count every chunk's words into, or null to
+     *                    count each chunk into its own tree
+     * @return the counts of each chunk, in input order
+     * @throws IOException if the stream cannot be read
+     */
+    public static List<ChunkCounts> count(InputStream in, int threads, Set<Token> stopWords, WordIndex sharedIndex)
+            throws IOException {
+        byte[] bytes = in.readAllBytes();
+        int chunkSize = (int) chunkSize(bytes.length, threads);
+        List<ByteBuffer> chunks = new ArrayList<>();
+
+        int start = 0;
+        while (start < bytes.length) {
+            // Move the end of the chunk forward past the next whitespace byte.
+            int end = (int) Math.min(bytes.length, (long) start + chunkSize);
+            while (end < bytes.length && !isWhitespace(bytes[end++])) {
+                // Keep scanning.
+            }
+            chunks.add(ByteBuffer.wrap(bytes, start, end - start));
+            start = end;
+        }
+        return count(chunks, threads, stopWords, sharedIndex);
+    }
+
+    /**
+     * Method to count the words of each chunk in parallel
+     * @param chunks the chunks, in input order
+     * @param threads the number of worker threads
+     * @param stopWords the words to count as stop words
+     * @param sharedIndex the index to count every chunk's words into, or null
+     * @return the counts of each chunk, in input order
+     */
+    private static List<ChunkCounts> count(List<ByteBuffer> chunks, int threads, Set<Token> stopWords,
+                                           WordIndex sharedIndex) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<ChunkCounts>> tasks = new ArrayList<>();
+            for (ByteBuffer chunk : chunks) {
+                tasks.add(pool.submit(() -> {
+                    ChunkCounts counts = new ChunkCounts(sharedIndex);
+                    counts.count(new Tokenizer(chunk), stopWords);
+                    return counts;
+                }));
+            }
+
+            List<ChunkCounts> results = new ArrayList<>();
+            for (ForkJoinTask<ChunkCounts> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Method to choose the nominal size of a chunk
+     * @param size the size of the whole input in bytes
+     * @param threads the number of worker threads
+     * @return the number of bytes in a chunk, before it is extended to the next whitespace
+     */
+    private static long chunkSize(long size, int threads) {
+        long chunks = (long) threads * CHUNKS_PER_THREAD;
+        return Math.max(1, Math.min(MAX_CHUNK_SIZE, (size + chunks - 1) / chunks));
+    }
+
+    /**
+     * Method to check whether a byte is ASCII whitespace, which always ends a token and
+     * never occurs inside a multi-byte UTF-8 sequence
+     * @param b the byte
+     * @return true if splitting the input after b cannot split a word
+     */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && Character.isWhitespace(b);
+    }
+}
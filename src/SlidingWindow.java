@@ -0,0 +1,76 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Remembers which words occurred in the most recent stretch of a stream, so their counts can
+ * be taken back as they fall out of it. The stretch, or window, is measured in ticks, which
+ * may be words read or nanoseconds elapsed; it is split into a fixed number of buckets, each
+ * holding how often each word occurred during its share of the window. A whole bucket expires
+ * at once, so the window always covers at least its span and at most one bucket more, and the
+ * work of expiring is one call per distinct word in the bucket rather than per occurrence.
+ */
+public class SlidingWindow {
+    /**
+     * The occurrences of words during one bucket's span of ticks.
+     */
+    private static class Bucket {
+        private final long start;
+        private final Map<Token, Integer> occurrences = new HashMap<>();
+
+        private Bucket(long start) {
+            this.start = start;
+        }
+    }
+
+    private final long span;
+    private final long bucketSpan;
+    private final BiConsumer<Token, Integer> expiry;
+    // The buckets still in the window, oldest first.
+    private final Deque<Bucket> buckets = new ArrayDeque<>();
+
+    /**
+     * Constructor for a window over the given number of ticks
+     * @param span the length of the window in ticks, at least 1
+     * @param bucketCount the number of buckets to split the window into
+     * @param expiry given each word and its number of occurrences in a bucket, when the bucket
+     *               falls out of the window
+     */
+    public SlidingWindow(long span, int bucketCount, BiConsumer<Token, Integer> expiry) {
+        this.span = span;
+        this.bucketSpan = Math.max(1, span / bucketCount);
+        this.expiry = expiry;
+    }
+
+    /**
+     * Method to record an occurrence of a word, after expiring whatever the window has moved
+     * past
+     * @param word the word, as kept by the index it is counted in
+     * @param tick the time of the occurrence; ticks never go backwards
+     */
+    public void record(Token word, long tick) {
+        advance(tick);
+        Bucket newest = buckets.peekLast();
+        if (newest == null || tick >= newest.start + bucketSpan) {
+            newest = new Bucket(tick - tick % bucketSpan);
+            buckets.addLast(newest);
+        }
+        newest.occurrences.merge(word, 1, Integer::sum);
+    }
+
+    /**
+     * Method to move the window up to a tick, expiring every bucket that lies wholly before
+     * the window that ends there
+     * @param tick the current time
+     */
+    public void advance(long tick) {
+        // The window ending at tick covers the ticks after tick - span.
+        while (!buckets.isEmpty() && buckets.peekFirst().start + bucketSpan <= tick - span + 1) {
+            for (Map.Entry<Token, Integer> entry : buckets.removeFirst().occurrences.entrySet()) {
+                expiry.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
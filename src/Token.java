@@ -1,20 +1,93 @@
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 /**
  * Represents a token with a text string and a count of its occurrences.
+ * <p>
+ * The text is held as Latin-1 bytes: a slice of a byte array that is usually shared with
+ * many other tokens (see {@link WordArena}), with the length and hash code cached, rather
+ * than as a String of its own. Comparisons work on the bytes directly.
  */
 public class Token implements Comparable<Token> {
 
     private int count = 1;
-    private final String str;
+    // Not final only so a reusable view can be pointed at the next word; see view().
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private int hash;
 
     /**
      * Constructs a new Token with the given string.
      * Also increments the count of unique words when called
      *
-     * @param s The text string of the token.
+     * @param s The text string of the token, which must be Latin-1.
      */
     public Token(String s) {
-        this.str = s;
+        this(s.getBytes(StandardCharsets.ISO_8859_1), 0, s.length());
+    }
+
+    /**
+     * Constructs a new Token over a slice of a byte array, without copying it. The slice
+     * must not change while the token is in use.
+     *
+     * @param bytes The array holding the Latin-1 text of the token.
+     * @param offset The index of the first byte of the text.
+     * @param length The number of bytes in the text.
+     */
+    public Token(byte[] bytes, int offset, int length) {
+        view(bytes, offset, length);
+    }
+
+    /**
+     * Points this token at another slice of a byte array, so one token can serve as a view
+     * of each word of a reused buffer in turn, as Tokenizer.nextToken() does. The count goes
+     * back to 1. A token that is kept, as in a tree or a set, must never be pointed elsewhere.
+     *
+     * @param bytes The array holding the Latin-1 text of the token.
+     * @param offset The index of the first byte of the text.
+     * @param length The number of bytes in the text.
+     */
+    void view(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.count = 1;
+
+        // The same hash code String gives, so a token hashes like its text.
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + (bytes[i] & 0xFF);
+        }
+        this.hash = h;
+    }
+
+    /**
+     * Gets the length of the text of this token.
+     *
+     * @return The number of characters in the token.
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Gets one byte of the text of this token.
+     *
+     * @param index The position of the byte, from 0.
+     * @return The Latin-1 byte.
+     */
+    public byte byteAt(int index) {
+        return bytes[offset + index];
+    }
+
+    /**
+     * Copies the text of this token into an array.
+     *
+     * @param destination The array to copy into.
+     * @param destinationOffset The index to copy the first byte to.
+     */
+    public void getBytes(byte[] destination, int destinationOffset) {
+        System.arraycopy(bytes, offset, destination, destinationOffset, length);
     }
 
     /**
@@ -33,6 +106,25 @@ public class Token implements Comparable<Token> {
         ++this.count;
     }
 
+    /**
+     * Adds to the count of occurrences for this token, as when merging counts.
+     *
+     * @param occurrences The number of further occurrences.
+     */
+    public void addCount(int occurrences) {
+        this.count += occurrences;
+    }
+
+    /**
+     * Takes away from the count of occurrences for this token, as when they expire from a
+     * window over the input.
+     *
+     * @param occurrences The number of occurrences no longer counted.
+     */
+    public void decrementCount(int occurrences) {
+        this.count -= occurrences;
+    }
+
     /**
      * Override equals method to compare two objects on if they are equal
      * @param obj object to be compared to calling object
@@ -53,16 +145,57 @@ public class Token implements Comparable<Token> {
              * itself.
              */
             return true;
-        } else return this.str.equals(obj.toString());
+        } else if (obj instanceof Token) {
+            Token t = (Token) obj;
+            return this.hash == t.hash && this.compareTo(t) == 0;
+        } else return this.toString().equals(obj.toString());
+    }
+
+    /**
+     * Override hashCode so that equal tokens hash alike; the same as the hash code of the text.
+     * @return the cached hash code
+     */
+    @Override
+    public int hashCode() {
+        return this.hash;
     }
 
     /**
-     *  Overridden String compareTo method since Tokens are not very special,
-     *  so a standard String comparison is sufficient.
+     *  Overridden compareTo method: the same order String.compareTo gives the texts,
+     *  computed on the bytes without making Strings.
      */
     @Override
     public int compareTo(Token t) {
-        return this.str.compareTo(t.toString());
+        int shorter = Math.min(this.length, t.length);
+        for (int i = 0; i < shorter; i++) {
+            int difference = (this.bytes[this.offset + i] & 0xFF) - (t.bytes[t.offset + i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return this.length - t.length;
+    }
+
+    /**
+     * Finds where the tokens starting with a prefix end, so they can be read as a range.
+     *
+     * @param prefix The prefix.
+     * @return The least token greater than every token that starts with the prefix, or null
+     * if there is none, as when the prefix is empty.
+     */
+    public static Token afterPrefix(Token prefix) {
+        // Drop any trailing 0xFF bytes, which cannot be incremented, then increment the last.
+        int end = prefix.length;
+        while (end > 0 && prefix.bytes[prefix.offset + end - 1] == (byte) 0xFF) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        byte[] bound = new byte[end];
+        System.arraycopy(prefix.bytes, prefix.offset, bound, 0, end);
+        bound[end - 1]++;
+        return new Token(bound, 0, end);
     }
 
     // This comparator will cause Collections.Sort to sort more frequent words first.
@@ -85,7 +218,7 @@ public class Token implements Comparable<Token> {
      * length they are sorted alphabetically.
      */
     public static Comparator<Token> CompLengthDesc = (Token tokenOne, Token tokenTwo) -> {
-        int difference = tokenOne.toString().length() - tokenTwo.toString().length();
+        int difference = tokenOne.length() - tokenTwo.length();
         return ((difference == 0) ? tokenOne.compareTo(tokenTwo) : -difference);
     };
 
@@ -94,7 +227,7 @@ public class Token implements Comparable<Token> {
      */
     @Override
     public String toString() {
-        return this.str;
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -106,6 +239,6 @@ public class Token implements Comparable<Token> {
         /* DONE: Whenever you print a Token, print the word, its length, and the number of
          * times it occurred, separated by colons.
          */
-        return str + ":" + str.length() + ":" + count;
+        return toString() + ":" + length + ":" + count;
     }
 }
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits UTF-8 text into lower-case words made only of the letters a-z.
+ * <p>
+ * Gives exactly the words that
+ * {@code scanner.next().toLowerCase().trim().replaceAll("[^a-z]", "")} gives, skipping the
+ * ones that come out empty, but works on large chunks of raw bytes: tokens are delimited by
+ * Java whitespace, case is folded and non-letters are dropped in a single pass, and no
+ * regular expression or intermediate string is involved.
+ * <p>
+ * A file can instead be memory-mapped, so its bytes are tokenized straight from the page
+ * cache without being copied; files too big for one mapping are mapped a segment at a time.
+ */
+public class Tokenizer {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // A mapping cannot exceed Integer.MAX_VALUE bytes, so larger files are mapped in segments.
+    private static final long SEGMENT_SIZE = 1L << 30;
+    // What a decoder substitutes for malformed input; neither whitespace nor a letter.
+    private static final int REPLACEMENT = 0xFFFD;
+
+    // At most one of channel (for streams) and file (for mapped files) is set; with neither,
+    // only the buffer given is read.
+    private final ReadableByteChannel channel;
+    private final FileChannel file;
+    private final long fileSize;
+    private long mappedUpTo = 0;
+    private ByteBuffer buffer;
+
+    // The letters of the word currently being scanned.
+    private byte[] word = new byte[32];
+    private int wordLength = 0;
+    // The view nextToken() returns, pointed at each word in turn.
+    private final Token view = new Token(word, 0, 0);
+    // Whether a complete word is waiting in the word buffer to be returned by next().
+    private boolean ready = false;
+
+    // State of a multi-byte UTF-8 sequence that has been partly read.
+    private int codePoint = 0;
+    private int pendingBytes = 0;
+    private int minimumCodePoint = 0;
+
+    /**
+     * Constructor for a Tokenizer reading from a stream, such as standard input
+     * @param in the stream of UTF-8 text
+     */
+    public Tokenizer(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /**
+     * Constructor for a Tokenizer reading from a channel
+     * @param channel the channel of UTF-8 text
+     */
+    public Tokenizer(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.file = null;
+        this.fileSize = 0;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip(); // Start out empty, so the first read fills it.
+    }
+
+    /**
+     * Constructor for a Tokenizer reading the remaining bytes of a buffer, such as one chunk
+     * of a larger input
+     * @param bytes the UTF-8 text
+     */
+    public Tokenizer(ByteBuffer bytes) {
+        this.channel = null;
+        this.file = null;
+        this.fileSize = 0;
+        this.buffer = bytes;
+    }
+
+    /**
+     * Constructor for a Tokenizer reading a memory-mapped file. The file is closed once
+     * all of it has been read.
+     * @param path the file of UTF-8 text
+     * @throws IOException if the file cannot be opened
+     */
+    public Tokenizer(Path path) throws IOException {
+        this.channel = null;
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = file.size();
+        this.buffer = ByteBuffer.allocate(0); // Start out empty, so the first segment is mapped.
+    }
+
+    /**
+     * Method to check whether there is another word in the input
+     * @return true if next() will return a word
+     * @throws UncheckedIOException if reading the input fails
+     */
+    public boolean hasNext() {
+        if (!ready) {
+            ready = advance();
+        }
+        return ready;
+    }
+
+    /**
+     * Method to return the next word in the input
+     * @return the next non-empty word, lower case and made only of the letters a-z
+     * @throws NoSuchElementException if the input has no more words
+     * @throws UncheckedIOException if reading the input fails
+     */
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        return new String(word, 0, wordLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Method to return the next word in the input as a token, without making a String. The
+     * token is a view of the tokenizer's own buffer, and the same token is returned by every
+     * call, so it is only valid until the next call; intern it into a WordArena to keep it.
+     * @return the next non-empty word, lower case and made only of the letters a-z
+     * @throws NoSuchElementException if the input has no more words
+     * @throws UncheckedIOException if reading the input fails
+     */
+    public Token nextToken() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        view.view(word, 0, wordLength);
+        return view;
+    }
+
+    /**
+     * Method to scan the input up to the end of the next non-empty word
+     * @return true if a word was scanned into the word buffer, false at the end of the input
+     */
+    private boolean advance() {
+        wordLength = 0;
+
+        while (buffer.hasRemaining() || fill()) {
+            int b = buffer.get() & 0xFF;
+
+            if (pendingBytes > 0) {
+                if ((b & 0xC0) == 0x80) {
+                    codePoint = (codePoint << 6) | (b & 0x3F);
+                    if (--pendingBytes == 0 && accept(decoded())) {
+                        return true;
+                    }
+                    continue;
+                }
+                // The sequence was cut short; the byte read starts something new.
+                pendingBytes = 0;
+            }
+
+            if (b < 0x80) {
+                if (accept(b)) {
+                    return true;
+                }
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                startSequence(b & 0x1F, 1, 0x80);
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                startSequence(b & 0x0F, 2, 0x800);
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                startSequence(b & 0x07, 3, 0x10000);
+            } else if (accept(REPLACEMENT)) {
+                return true;
+            }
+        }
+
+        // The end of the input ends the last word.
+        return wordLength > 0;
+    }
+
+    /**
+     * Method to refill the buffer from the channel, or map the next segment of the file
+     * @return false if there are no more bytes
+     */
+    private boolean fill() {
+        try {
+            if (file != null) {
+                return mapNextSegment();
+            } else if (channel == null) {
+                return false; // A buffer is read only once.
+            }
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            return read > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method to map the next segment of the file into the buffer
+     * @return false if the whole file has been mapped already
+     * @throws IOException if the file cannot be mapped
+     */
+    private boolean mapNextSegment() throws IOException {
+        long remaining = fileSize - mappedUpTo;
+        if (remaining <= 0) {
+            file.close();
+            return false;
+        }
+        long length = Math.min(remaining, SEGMENT_SIZE);
+        buffer = file.map(FileChannel.MapMode.READ_ONLY, mappedUpTo, length);
+        mappedUpTo += length;
+        return true;
+    }
+
+    /**
+     * Method to begin decoding a multi-byte UTF-8 sequence
+     * @param bits the payload bits of the lead byte
+     * @param continuationBytes the number of continuation bytes to follow
+     * @param minimum the smallest code point the sequence may encode without being overlong
+     */
+    private void startSequence(int bits, int continuationBytes, int minimum) {
+        codePoint = bits;
+        pendingBytes = continuationBytes;
+        minimumCodePoint = minimum;
+    }
+
+    /**
+     * Method to return the code point of a completed multi-byte sequence
+     * @return the code point, or the replacement character if the sequence was malformed
+     */
+    private int decoded() {
+        boolean valid = codePoint >= minimumCodePoint && codePoint <= Character.MAX_CODE_POINT
+                && !(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE);
+        return valid ? codePoint : REPLACEMENT;
+    }
+
+    /**
+     * Method to consume one code point of input: whitespace ends the current token, letters
+     * that fold to a-z are appended to the word, and anything else is dropped.
+     * @param cp the code point read
+     * @return true if the code point ended a non-empty word
+     */
+    private boolean accept(int cp) {
+        if (cp >= 'a' && cp <= 'z') {
+            append(cp);
+        } else if (cp >= 'A' && cp <= 'Z') {
+            append(cp + ('a' - 'A'));
+        } else if (Character.isWhitespace(cp)) {
+            return wordLength > 0;
+        } else if (cp >= 0x80) {
+            // A few non-ASCII letters, such as the Kelvin sign, lower-case to ASCII letters.
+            int lower = Character.toLowerCase(cp);
+            if (lower >= 'a' && lower <= 'z') {
+                append(lower);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to append a letter to the word being scanned
+     * @param letter the lower-case ASCII letter
+     */
+    private void append(int letter) {
+        if (wordLength == word.length) {
+            word = Arrays.copyOf(word, word.length * 2);
+        }
+        word[wordLength++] = (byte) letter;
+    }
+}
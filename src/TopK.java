@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the k first elements, according to a comparator, of a sequence seen one element at
+ * a time, in O(log k) time per element and O(k) memory. The candidates are kept in a heap with
+ * the worst of them on top, so a new element only has to beat that one to get in.
+ * @param <T> the type of the elements
+ */
+public class TopK<T> {
+    private final int k;
+    private final Comparator<? super T> cmp;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * Constructor for a selector of the k first elements
+     * @param k the number of elements to keep
+     * @param comparator orders the elements; the smallest are the ones kept
+     */
+    public TopK(int k, Comparator<? super T> comparator) {
+        this.k = k;
+        this.cmp = comparator;
+        // Reversed, so the head of the queue is the worst element kept.
+        this.heap = new PriorityQueue<>(k + 1, comparator.reversed());
+    }
+
+    /**
+     * Method to consider an element for the selection
+     * @param element the next element of the sequence
+     */
+    public void offer(T element) {
+        if (heap.size() < k) {
+            heap.add(element);
+        } else if (k > 0 && cmp.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    /**
+     * Method to return the number of elements selected so far, at most k
+     * @return the number of elements kept
+     */
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Method to return the elements selected, in order
+     * @return a new list of the kept elements, sorted by the comparator
+     */
+    public List<T> toSortedList() {
+        List<T> sorted = new ArrayList<>(heap);
+        sorted.sort(cmp);
+        return sorted;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * A word index kept in an AVL (or splay) tree of Tokens on the heap, with the text of the
+ * words packed into a WordArena.
+ */
+public class TreeWordIndex implements WordIndex {
+    private final BST<Token> tree;
+    private final WordArena arena = new WordArena();
+
+    /**
+     * Constructor for an empty index in an AVL tree
+     */
+    public TreeWordIndex() {
+        this(BST.Mode.AVL);
+    }
+
+    /**
+     * Constructor for an empty index in a tree of the given mode, such as SPLAY to keep the
+     * most frequent words near the root
+     * @param mode the mode of the tree
+     */
+    public TreeWordIndex(BST.Mode mode) {
+        this.tree = new BST<>(mode);
+    }
+
+    /**
+     * Constructor for an index of the words of a snapshot, in a perfectly balanced tree built
+     * in O(n) without comparing any words
+     * @param snapshot the saved words, which are copied onto the heap
+     */
+    public TreeWordIndex(IndexSnapshot snapshot) {
+        Iterator<Token> saved = snapshot.iterator();
+        Iterator<Token> kept = new Iterator<Token>() {
+            @Override
+            public boolean hasNext() {
+                return saved.hasNext();
+            }
+
+            @Override
+            public Token next() {
+                Token word = saved.next();
+                Token copy = arena.intern(word);
+                copy.addCount(word.getCount() - 1);
+                return copy;
+            }
+        };
+        this.tree = BST.fromSorted(kept, snapshot.size(), Comparator.naturalOrder(), BST.Mode.AVL);
+    }
+
+    @Override
+    public void add(Token word) {
+        // Count the word again if it is in the tree, or else insert a lasting copy of it.
+        tree.merge(word, arena::intern, Token::incrementCount);
+    }
+
+    @Override
+    public void add(Token word, int occurrences) {
+        tree.merge(word, w -> {
+            Token copy = arena.intern(w);
+            copy.addCount(occurrences - 1);
+            return copy;
+        }, existing -> existing.addCount(occurrences));
+    }
+
+    /**
+     * Method to count one occurrence of a word, leaving the caller to increment the count of
+     * a word already counted, as a tree ordered by count needs to (see BST.reposition)
+     * @param word the word, which may be a view of a reused buffer; it is copied if kept
+     * @param increment applied to the kept token, when the word was already counted, and
+     *                  must increment its count
+     * @return the kept token, with its new count
+     */
+    public Token add(Token word, Consumer<Token> increment) {
+        return tree.merge(word, arena::intern, increment);
+    }
+
+    /**
+     * Method to stop counting a word altogether, as when its count has fallen to zero
+     * @param word the word
+     */
+    public void remove(Token word) {
+        tree.delete(word);
+    }
+
+    /**
+     * Method to iterate over the words that start with a prefix, in order, in O(log n + k)
+     * @param prefix the prefix
+     * @return an iterator over the words starting with prefix
+     */
+    public Iterator<Token> prefix(Token prefix) {
+        return tree.subSet(prefix, true, Token.afterPrefix(prefix), false);
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public int height() {
+        return tree.height();
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new BST.InOrderIterator<>(tree);
+    }
+
+    /**
+     * Method to return the tree the words are kept in, to describe its shape
+     * @return the tree, which must not be changed
+     */
+    public BST<Token> getTree() {
+        return tree;
+    }
+}
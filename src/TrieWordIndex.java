@@ -0,0 +1,315 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A word index kept in a radix trie: each edge is labelled with a run of letters, every
+ * node with more than one child branches on the next letter, and a node where a word ends
+ * holds that word's token and count. Words that share a prefix share the nodes for it, so
+ * adding a word compares each of its letters once instead of comparing whole words at
+ * every level of a tree.
+ * <p>
+ * The labels are slices of the words themselves, whose text is packed into a WordArena, so
+ * the trie stores no text of its own. The children of a node are kept in order of their
+ * first letter, which makes a depth-first walk yield the words in alphabetical order.
+ */
+public class TrieWordIndex implements WordIndex {
+    private final Node root = new Node(null, 0, 0);
+    private final WordArena arena = new WordArena();
+    private int size = 0;
+    private int nodeCount = 1;
+
+    @Override
+    public void add(Token word) {
+        add(word, 1);
+    }
+
+    @Override
+    public void add(Token word, int occurrences) {
+        Node n = root;
+        int i = 0;
+        int length = word.length();
+
+        while (i < length) {
+            int slot = n.findChild(word.byteAt(i));
+            if (slot < 0) {
+                // No word goes on from here with this letter; the rest of the word is a leaf.
+                Token copy = keep(word, occurrences);
+                Node leaf = new Node(copy, i, length);
+                leaf.word = copy;
+                n.insertChild(-slot - 1, leaf);
+                nodeCount++;
+                return;
+            }
+            Node child = n.children[slot];
+            int matched = child.match(word, i);
+            if (matched < child.end - child.start) {
+                // The word leaves the edge part way along; split it there.
+                Node middle = new Node(child.label, child.start, child.start + matched);
+                child.start += matched;
+                middle.insertChild(0, child);
+                n.children[slot] = middle;
+                nodeCount++;
+                child = middle;
+            }
+            n = child;
+            i += matched;
+        }
+
+        if (n.word == null) {
+            n.word = keep(word, occurrences);
+        } else {
+            n.word.addCount(occurrences);
+        }
+    }
+
+    /**
+     * Method to make a lasting copy of a word being counted for the first time
+     * @param word the word, which may be a view of a reused buffer
+     * @param occurrences its count
+     * @return the copy, with its text in the arena
+     */
+    private Token keep(Token word, int occurrences) {
+        Token copy = arena.intern(word);
+        copy.addCount(occurrences - 1);
+        size++;
+        return copy;
+    }
+
+    /**
+     * Method to return the count of a word, following its letters down from the root
+     * @param word the word
+     * @return the kept token for the word, or null if it has not been counted
+     */
+    public Token find(Token word) {
+        Node n = find(word, false);
+        return (n == null) ? null : n.word;
+    }
+
+    /**
+     * Method to iterate over the words that start with a prefix, in order. Only the subtree
+     * below the prefix is walked, so this costs O(p + k) for a prefix of p letters and k words.
+     * @param prefix the prefix
+     * @return an iterator over the words starting with prefix
+     */
+    public Iterator<Token> prefix(Token prefix) {
+        return new WordIterator(find(prefix, true));
+    }
+
+    /**
+     * Method to find the node for a word, or for the words starting with it
+     * @param word the word or prefix
+     * @param partial true to accept a word that ends part way along an edge, giving the
+     *                node at the end of that edge, under which every word has the prefix
+     * @return the node, or null if there is none
+     */
+    private Node find(Token word, boolean partial) {
+        Node n = root;
+        int i = 0;
+        int length = word.length();
+
+        while (i < length) {
+            int slot = n.findChild(word.byteAt(i));
+            if (slot < 0) {
+                return null;
+            }
+            Node child = n.children[slot];
+            int matched = child.match(word, i);
+            if (matched < child.end - child.start && (i + matched < length || !partial)) {
+                return null;
+            }
+            n = child;
+            i += matched;
+        }
+        return n;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to return the height of the tree the words are kept in, which there is none of
+     * to compare with a binary tree's, since a trie branches on letters; see depth()
+     * @return -1
+     */
+    @Override
+    public int height() {
+        return -1;
+    }
+
+    /**
+     * Method to return the number of nodes on the longest path from the root, which is at
+     * most one more than the length of the longest word. The whole trie is walked, so this
+     * costs O(n).
+     * @return the depth of the trie, 1 when empty
+     */
+    public int depth() {
+        int depth = 0;
+        // The nodes waiting to be visited, and their depths.
+        Node[] nodes = new Node[64];
+        int[] depths = new int[64];
+        int waiting = 0;
+        nodes[waiting] = root;
+        depths[waiting++] = 1;
+        while (waiting > 0) {
+            Node n = nodes[--waiting];
+            int d = depths[waiting];
+            depth = Math.max(depth, d);
+            if (waiting + n.childCount > nodes.length) {
+                nodes = Arrays.copyOf(nodes, Math.max(waiting + n.childCount, 2 * nodes.length));
+                depths = Arrays.copyOf(depths, nodes.length);
+            }
+            for (int c = 0; c < n.childCount; c++) {
+                nodes[waiting] = n.children[c];
+                depths[waiting++] = d + 1;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Method to return the number of nodes in the trie, counting the root and the nodes
+     * where edges branch as well as those where words end
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new WordIterator(root);
+    }
+
+    /**
+     * Depth-first iterator over the words of a subtree, in alphabetical order: a node's own
+     * word comes before those of its children, since a word sorts before its extensions.
+     */
+    private static class WordIterator implements Iterator<Token> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+        private Token next;
+
+        WordIterator(Node subtreeRoot) {
+            if (subtreeRoot != null) {
+                stack.push(subtreeRoot);
+            }
+            advance();
+        }
+
+        /**
+         * Method to walk on to the next node that holds a word
+         */
+        private void advance() {
+            next = null;
+            while (next == null && !stack.isEmpty()) {
+                Node n = stack.pop();
+                // Push the children last first, so the first is visited first.
+                for (int c = n.childCount - 1; c >= 0; c--) {
+                    stack.push(n.children[c]);
+                }
+                next = n.word;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Token next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Token word = next;
+            advance();
+            return word;
+        }
+    }
+
+    /**
+     * A node of the trie and the edge leading into it, whose label is the letters
+     * [start, end) of a word kept in the trie.
+     */
+    private static class Node {
+        private final Token label;
+        private int start;
+        private final int end;
+        // The word that ends at this node, or null.
+        private Token word;
+        // The children in order of the first letter of their labels, no two alike.
+        private Node[] children;
+        private int childCount;
+
+        Node(Token label, int start, int end) {
+            this.label = label;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Method to find the child whose label starts with a letter, by binary search
+         * @param letter the letter
+         * @return the child's slot, or -(insertion point) - 1 if there is none
+         */
+        private int findChild(byte letter) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int difference = (children[middle].firstLetter() & 0xFF) - (letter & 0xFF);
+                if (difference < 0) {
+                    low = middle + 1;
+                } else if (difference > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+
+        /**
+         * Method to insert a child at a slot, keeping the children in order
+         * @param slot the slot
+         * @param child the child
+         */
+        private void insertChild(int slot, Node child) {
+            if (children == null) {
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            System.arraycopy(children, slot, children, slot + 1, childCount - slot);
+            children[slot] = child;
+            childCount++;
+        }
+
+        /**
+         * Method to return the first letter of the label
+         * @return the letter
+         */
+        private byte firstLetter() {
+            return label.byteAt(start);
+        }
+
+        /**
+         * Method to count how many letters of the label a word matches
+         * @param word the word
+         * @param from the position in the word the label is matched against
+         * @return the length of the common prefix of the label and the rest of the word
+         */
+        private int match(Token word, int from) {
+            int limit = Math.min(end - start, word.length() - from);
+            int matched = 0;
+            while (matched < limit && label.byteAt(start + matched) == word.byteAt(from + matched)) {
+                matched++;
+            }
+            return matched;
+        }
+    }
+}
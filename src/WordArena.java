@@ -0,0 +1,32 @@
+/**
+ * Stores the text of many tokens back to back in large shared blocks, so each distinct word
+ * costs its bytes plus one small Token, instead of a Token, a String and a byte array of its
+ * own.
+ * <p>
+ * An arena is not thread-safe; each thread that keeps words needs its own.
+ */
+public class WordArena {
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int used = 0;
+
+    /**
+     * Method to make a lasting copy of a token whose bytes may change, such as one returned by
+     * Tokenizer.nextToken()
+     * @param word the token to copy; its count is not copied
+     * @return a new token with a count of 1, whose text is stored in this arena
+     */
+    public Token intern(Token word) {
+        int length = word.length();
+        if (length > block.length - used) {
+            // Start a new block; the rest of the old one is left unused.
+            block = new byte[Math.max(BLOCK_SIZE, length)];
+            used = 0;
+        }
+        int offset = used;
+        word.getBytes(block, offset);
+        used += length;
+        return new Token(block, offset, length);
+    }
+}
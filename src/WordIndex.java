@@ -0,0 +1,41 @@
+import java.util.Iterator;
+
+/**
+ * Counts the distinct words of an input and lists them in alphabetical order. This is the
+ * store behind the alphabetic view of A3, and can be kept in different ways.
+ */
+public interface WordIndex extends Iterable<Token> {
+
+    /**
+     * Method to count one occurrence of a word
+     * @param word the word, which may be a view of a reused buffer; it is copied if kept
+     */
+    void add(Token word);
+
+    /**
+     * Method to count several occurrences of a word at once, as when merging counts
+     * @param word the word, which may be a view of a reused buffer; it is copied if kept
+     * @param occurrences the number of occurrences, at least 1
+     */
+    void add(Token word, int occurrences);
+
+    /**
+     * Method to return the number of distinct words counted
+     * @return the number of words
+     */
+    int size();
+
+    /**
+     * Method to return the height of the binary tree the words are kept in
+     * @return the number of nodes on the longest path from the root, 0 when empty, or -1 if
+     *         the words are not kept in a binary tree
+     */
+    int height();
+
+    /**
+     * Method to iterate over the words in alphabetical order, with their counts
+     * @return an iterator over the words
+     */
+    @Override
+    Iterator<Token> iterator();
+}